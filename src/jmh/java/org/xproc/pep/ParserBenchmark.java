@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * The benchmarks run for every grammar and string: parsing, recognizing, and
+ * parsing followed by building the parse trees. Subclasses supply the
+ * grammar, the string and the seed category.
+ * <p>
+ * Each benchmark is run once for every combination of {@link ParserOption
+ * parser options} in {@link #options}. A combination is written as option
+ * names joined by <code>+</code>, each optionally followed by
+ * <code>=false</code>, so that for example
+ * <blockquote><code>-p options=PREDICT_WITH_LOOKAHEAD+MEMOIZE_RIGHT_RECURSION=false</code></blockquote>
+ * runs the benchmarks with lookahead and without right recursion
+ * memoization. Options not named keep their defaults.
+ * @see SampleBenchmark
+ * @see StressBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class ParserBenchmark {
+	static final int TREES = 1000; // at most, for highly ambiguous strings
+
+	@Param({"defaults", "PREDICT_FOR_PRETERMINALS", "PREDICT_WITH_LOOKAHEAD",
+		"PREDICT_FOR_PRETERMINALS+PREDICT_WITH_LOOKAHEAD",
+		"MEMOIZE_RIGHT_RECURSION=false"})
+	public String options;
+
+	EarleyParser parser;
+	List<String> tokens;
+	Category seed;
+
+	/**
+	 * Gets the grammar to parse with.
+	 */
+	abstract Grammar grammar() throws Exception;
+
+	/**
+	 * Gets the string to parse, as tokens.
+	 */
+	abstract List<String> tokens();
+
+	/**
+	 * Gets the seed category to parse for.
+	 */
+	abstract Category seed();
+
+	@Setup
+	public void setUp() throws Exception {
+		parser = new EarleyParser(grammar().freeze());
+		if(!options.equals("defaults")) {
+			for(String option : options.split("\\+")) {
+				int eq = option.indexOf('=');
+				parser.setOption(ParserOption.valueOf(
+						(eq < 0) ? option : option.substring(0, eq)),
+					(eq < 0) || Boolean.parseBoolean(option.substring(eq + 1)));
+			}
+		}
+
+		tokens = tokens();
+		seed = seed();
+		if(parser.recognize(tokens, seed) != Status.ACCEPT) {
+			throw new IllegalStateException("string not accepted: " + tokens);
+		}
+	}
+
+	@Benchmark
+	public Parse parse() throws PepException {
+		return parser.parse(tokens, seed);
+	}
+
+	@Benchmark
+	public Status recognize() throws PepException {
+		return parser.recognize(tokens, seed);
+	}
+
+	/**
+	 * Parses the string and builds its parse trees, up to {@link #TREES}, so
+	 * that the time taken by building trees is this less {@link #parse()}.
+	 * Parse trees are kept by their parse once they are built, so a new parse
+	 * is needed each time.
+	 */
+	@Benchmark
+	public Set<ParseTree> getParseTrees() throws PepException {
+		return parser.parse(tokens, seed).getParseTrees(TREES);
+	}
+}
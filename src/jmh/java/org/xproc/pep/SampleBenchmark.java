@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Param;
+
+
+/**
+ * Benchmarks the grammars in the <code>samples</code> directory, each with a
+ * string it licenses. The directory is looked for in the working directory,
+ * or in the one named by the <code>pep.samples</code> system property.
+ */
+public class SampleBenchmark extends ParserBenchmark {
+	@Param({"miniscule", "tiny", "ntmix", "pep", "lambda_calculus",
+		"lambda_text"})
+	public String grammar;
+
+	@Override
+	Grammar grammar() throws Exception {
+		File samples = new File(System.getProperty("pep.samples", "samples"));
+		return new GrammarParser().parse(new File(samples, grammar + ".xml"));
+	}
+
+	@Override
+	List<String> tokens() {
+		String string;
+		if(grammar.equals("miniscule")) {
+			string = "the boy left";
+		}
+		else if(grammar.equals("tiny")) { // 14 parses
+			string = "Mary saw the man in the park with the telescope at midnight";
+		}
+		else if(grammar.equals("ntmix")) {
+			string = "v v t w x u w x u w x";
+		}
+		else if(grammar.equals("pep")) {
+			string = "Pep is an Earley Parser is an Earley Parser";
+		}
+		else if(grammar.equals("lambda_calculus")) {
+			string = "( lambda f . ( lambda x . ( f x ) ) )";
+		}
+		else if(grammar.equals("lambda_text")) { // 24 parses
+			string = "It consists of a single transformation rule and a single"
+				+ " function definition scheme";
+		}
+		else {
+			throw new IllegalArgumentException("unknown sample: " + grammar);
+		}
+
+		return Arrays.asList(string.split(" "));
+	}
+
+	@Override
+	Category seed() {
+		return new Category(grammar.equals("ntmix") ? "A"
+			: grammar.equals("lambda_calculus") ? "M" : "S");
+	}
+}
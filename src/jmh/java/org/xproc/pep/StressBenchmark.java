@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Param;
+
+
+/**
+ * Benchmarks generated grammars that are hard on an Earley parser, with
+ * strings of increasing length:
+ * <ul>
+ * 	<li><code>left</code>: <code>S -&gt; S a | a</code>, left recursion.</li>
+ * 	<li><code>right</code>: <code>S -&gt; a S | a</code>, right recursion,
+ * 		which is quadratic unless
+ * 		{@link ParserOption#MEMOIZE_RIGHT_RECURSION memoized}.</li>
+ * 	<li><code>ambiguous</code>: <code>S -&gt; S S | a</code>, which gives a
+ * 		Catalan number of parse trees and a cubic chart.</li>
+ * 	<li><code>lexicon</code>: a sequence of words from
+ * 		{@value #CLASSES} word classes of {@value #WORDS} words each, which is
+ * 		hard on prediction and scanning rather than completion.</li>
+ * </ul>
+ */
+public class StressBenchmark extends ParserBenchmark {
+	static final int CLASSES = 10, WORDS = 1000; // of the large lexicon
+
+	@Param({"left", "right", "ambiguous", "lexicon"})
+	public String grammar;
+
+	@Param({"8", "32", "128"})
+	public int length;
+
+	final Category S = new Category("S"), a = new Category("a", true);
+
+	@Override
+	Grammar grammar() {
+		Grammar g = new Grammar(grammar);
+		if(grammar.equals("left")) {
+			g.addRule(new Rule(S, S, a));
+			g.addRule(new Rule(S, a));
+		}
+		else if(grammar.equals("right")) {
+			g.addRule(new Rule(S, a, S));
+			g.addRule(new Rule(S, a));
+		}
+		else if(grammar.equals("ambiguous")) {
+			g.addRule(new Rule(S, S, S));
+			g.addRule(new Rule(S, a));
+		}
+		else if(grammar.equals("lexicon")) {
+			for(int c = 0; c < CLASSES; c++) {
+				Category wordClass = new Category("C" + c);
+				g.addRule(new Rule(S, wordClass, S));
+				g.addRule(new Rule(S, wordClass));
+				for(int w = 0; w < WORDS; w++) {
+					g.addRule(new Rule(wordClass, new Category(word(c, w), true)));
+				}
+			}
+		}
+		else {
+			throw new IllegalArgumentException("unknown grammar: " + grammar);
+		}
+
+		return g;
+	}
+
+	@Override
+	List<String> tokens() {
+		List<String> tokens = new ArrayList<String>(length);
+		for(int i = 0; i < length; i++) {
+			tokens.add(grammar.equals("lexicon")
+				? word(i % CLASSES, (i * 7919) % WORDS) : a.getName());
+		}
+
+		return tokens;
+	}
+
+	@Override
+	Category seed() {
+		return S;
+	}
+
+	private static String word(int wordClass, int word) {
+		return "w" + wordClass + "_" + word;
+	}
+}
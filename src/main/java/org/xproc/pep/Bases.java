@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+
+/**
+ * The {@link Edge#getBases() bases} of an edge, as an immutable set that
+ * shares its elements with the bases of the edge it was advanced from.
+ * <p>
+ * Each step of a scan or completion adds one basis to those of the edge it
+ * advances. Rather than copying them, the new set just points to the
+ * previous one, so advancing over a rule of length <em>k</em> allocates
+ * <em>O(k)</em> space in all instead of <em>O(k<sup>2</sup>)</em>. The hash
+ * code of the set is kept up to date as bases are added, so that hashing an
+ * edge does not walk its whole derivation, and looking for a basis only
+ * compares hash codes until one matches.
+ * @see Edge#addBasisEdge(Edge, Edge)
+ */
+final class Bases extends AbstractSet<Edge> {
+	final Bases previous; // null for the first basis
+	final Edge basis;
+	final int size, hash, basisHash;
+
+	/**
+	 * Creates a set of bases that consists of the specified set followed by
+	 * another basis, which must not already be contained.
+	 * @param previous The bases before <code>basis</code>, or
+	 * <code>null</code> if there are none.
+	 */
+	private Bases(Bases previous, Edge basis) {
+		this.previous = previous;
+		this.basis = basis;
+		basisHash = basis.hashCode();
+		size = (previous == null) ? 1 : previous.size + 1;
+		hash = (previous == null) ? basisHash : previous.hash + basisHash;
+	}
+
+	/**
+	 * Gets the bases of an edge followed by another basis.
+	 * @param bases The bases of the edge being advanced.
+	 * @param basis The basis to add.
+	 * @param check Whether <code>bases</code> could already contain
+	 * <code>basis</code>. A scanned edge is never among its own bases, but
+	 * the same passive edge can complete two empty categories in a row.
+	 * @return A set sharing its elements with <code>bases</code> if that was
+	 * created by this method, or <code>bases</code> itself if it already
+	 * contains <code>basis</code>.
+	 */
+	static Bases add(Set<Edge> bases, Edge basis, boolean check) {
+		Bases previous;
+		if(bases instanceof Bases) {
+			previous = (Bases)bases;
+		}
+		else { // some other set, copied once
+			previous = null;
+			for(Edge e : bases) {
+				previous = (previous == null || !previous.contains(e))
+					? new Bases(previous, e) : previous;
+			}
+		}
+
+		return (check && previous != null && previous.contains(basis))
+			? previous : new Bases(previous, basis);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if(o instanceof Edge) {
+			int h = o.hashCode();
+			for(Bases b = this; b != null; b = b.previous) {
+				if(b.basisHash == h && (b.basis == o || b.basis.equals(o))) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	/**
+	 * Iterates over the bases in the order they were added.
+	 */
+	@Override
+	public Iterator<Edge> iterator() {
+		final Edge[] order = new Edge[size];
+		int i = size;
+		for(Bases b = this; b != null; b = b.previous) {
+			order[--i] = b.basis;
+		}
+
+		return new Iterator<Edge>() {
+			int next = 0;
+
+			public boolean hasNext() {
+				return (next < order.length);
+			}
+
+			public Edge next() {
+				if(next == order.length) {
+					throw new NoSuchElementException();
+				}
+
+				return order[next++];
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
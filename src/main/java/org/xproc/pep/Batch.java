@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * The outcome of parsing a batch of inputs with a {@link BatchParser}: the
+ * parses, if they were kept, and how many of them had each
+ * {@link Status status}, along with how long the batch took.
+ * @see BatchParser#parseAll(Iterable, Category)
+ */
+public class Batch {
+	final List<Parse> parses;
+	final int accepted, rejected, errors;
+	final long tokens, nanos;
+
+	Batch(List<Parse> parses, int accepted, int rejected, int errors,
+			long tokens, long nanos) {
+		this.parses = parses;
+		this.accepted = accepted;
+		this.rejected = rejected;
+		this.errors = errors;
+		this.tokens = tokens;
+		this.nanos = nanos;
+	}
+
+	/**
+	 * Gets the parses of the batch, in the order of the inputs.
+	 * @return The parses, or an empty list if they were handed out as they
+	 * were completed instead of being kept.
+	 */
+	public List<Parse> getParses() {
+		return Collections.unmodifiableList(parses);
+	}
+
+	/**
+	 * Gets the number of inputs parsed.
+	 */
+	public int getCount() {
+		return accepted + rejected + errors;
+	}
+
+	/**
+	 * Gets the number of inputs whose parse was {@link Status#ACCEPT
+	 * accepted}.
+	 */
+	public int getAccepted() {
+		return accepted;
+	}
+
+	/**
+	 * Gets the number of inputs whose parse was {@link Status#REJECT
+	 * rejected}.
+	 */
+	public int getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * Gets the number of inputs whose parse ended in an
+	 * {@link Status#ERROR error}.
+	 */
+	public int getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Gets the total number of tokens in the inputs.
+	 */
+	public long getTokens() {
+		return tokens;
+	}
+
+	/**
+	 * Gets the time the batch took, from reading the first input to handing
+	 * out the last parse, in nanoseconds.
+	 */
+	public long getNanos() {
+		return nanos;
+	}
+
+	/**
+	 * Gets the number of inputs parsed per second.
+	 */
+	public double getParsesPerSecond() {
+		return (nanos == 0L) ? 0.0 : getCount() * 1e9 / nanos;
+	}
+
+	/**
+	 * Gets the number of tokens parsed per second.
+	 */
+	public double getTokensPerSecond() {
+		return (nanos == 0L) ? 0.0 : tokens * 1e9 / nanos;
+	}
+
+	/**
+	 * Gets a string representation of the statistics of this batch.
+	 */
+	@Override
+	public String toString() {
+		return String.format("%d parses (%d accepted, %d rejected, %d errors),"
+			+ " %d tokens in %.1f ms: %.0f parses/s, %.0f tokens/s",
+			getCount(), accepted, rejected, errors, tokens, nanos / 1e6,
+			getParsesPerSecond(), getTokensPerSecond());
+	}
+}
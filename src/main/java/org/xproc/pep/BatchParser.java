@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.ObjIntConsumer;
+
+
+/**
+ * Parses many independent inputs with the same {@link EarleyParser parser},
+ * spreading them across the threads of a {@link ForkJoinPool}.
+ * <p>
+ * Inputs are read from an {@link Iterable} in the calling thread and handed
+ * to the pool in chunks, so that the cost of a task is shared by several
+ * short inputs, and only a few chunks per thread are underway at a time, so
+ * that inputs are read no faster than they can be parsed. The parses can
+ * be {@link #parseAll(Iterable, Category) collected} in the order of the
+ * inputs, or {@link #parseAll(Iterable, Category, ObjIntConsumer) handed
+ * out} as they are completed, without being kept. Either way, the
+ * {@link Batch batch} tells how many inputs were accepted and how fast
+ * they were parsed. A stream of inputs can be given as
+ * <code>stream::iterator</code>.
+ * <p>
+ * Since a parser can be shared by concurrent threads, a batch parser just
+ * uses the parser it is given, with the grammar and options it has when the
+ * batch starts. Its grammar should not be changed during the batch; a
+ * {@link Grammar#freeze() frozen} grammar cannot be. Inputs that cannot be
+ * parsed, such as empty ones, give parses with {@link Status#ERROR error}
+ * status instead of ending the batch.
+ * @see EarleyParser
+ */
+public class BatchParser {
+	static final int CHUNK = 64; // inputs per task
+
+	final EarleyParser parser;
+	final ForkJoinPool pool;
+
+	/**
+	 * Creates a batch parser that uses the {@link ForkJoinPool#commonPool()
+	 * common pool}.
+	 * @param parser The parser to parse each input with.
+	 * @see #BatchParser(EarleyParser, ForkJoinPool)
+	 */
+	public BatchParser(EarleyParser parser) {
+		this(parser, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a batch parser.
+	 * @param parser The parser to parse each input with.
+	 * @param pool The pool whose threads parse the inputs.
+	 * @throws IllegalArgumentException If either argument is
+	 * <code>null</code>.
+	 */
+	public BatchParser(EarleyParser parser, ForkJoinPool pool) {
+		if(parser == null) {
+			throw new IllegalArgumentException("null parser");
+		}
+		if(pool == null) {
+			throw new IllegalArgumentException("null pool");
+		}
+
+		this.parser = parser;
+		this.pool = pool;
+	}
+
+	/**
+	 * Gets the parser each input is parsed with.
+	 */
+	public EarleyParser getParser() {
+		return parser;
+	}
+
+	/**
+	 * Parses every input for the specified seed category, keeping the
+	 * parses in the order of the inputs.
+	 * @param inputs The inputs, each a list of tokens.
+	 * @param seed The seed category to parse each input for.
+	 * @return The batch, with a {@link Batch#getParses() parse} for each
+	 * input.
+	 * @throws PepException If <code>seed</code> is <code>null</code>, or if
+	 * the calling thread is interrupted.
+	 */
+	public Batch parseAll(Iterable<? extends List<String>> inputs,
+			Category seed) throws PepException {
+		return run(inputs, seed, true, null);
+	}
+
+	/**
+	 * Parses every input for the specified seed category, handing out each
+	 * parse as soon as it is completed. The parses are handed out in the
+	 * calling thread, so <code>consumer</code> need not be thread-safe, and
+	 * they are not kept.
+	 * @param inputs The inputs, each a list of tokens.
+	 * @param seed The seed category to parse each input for.
+	 * @param consumer Receives each parse with the position of its input.
+	 * @return The batch, without any parses.
+	 * @throws PepException If <code>seed</code> is <code>null</code>, or if
+	 * the calling thread is interrupted.
+	 */
+	public Batch parseAll(Iterable<? extends List<String>> inputs,
+			Category seed, ObjIntConsumer<? super Parse> consumer)
+			throws PepException {
+		if(consumer == null) {
+			throw new IllegalArgumentException("null consumer");
+		}
+
+		return run(inputs, seed, false, consumer);
+	}
+
+	private Batch run(Iterable<? extends List<String>> inputs,
+			final Category seed, boolean ordered,
+			ObjIntConsumer<? super Parse> consumer) throws PepException {
+		if(seed == null) {
+			throw new PepException("invalid seed category: " + seed);
+		}
+
+		long start = System.nanoTime();
+		List<Parse> parses = ordered ? new ArrayList<Parse>()
+			: Collections.<Parse>emptyList();
+		int[] counts = new int[Status.values().length];
+		long tokens = 0L;
+
+		CompletionService<Chunk> completed
+			= new ExecutorCompletionService<Chunk>(pool);
+		ArrayDeque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+		int limit = Math.max(2, pool.getParallelism() * 4); // chunks underway
+
+		Iterator<? extends List<String>> it = inputs.iterator();
+		int read = 0;
+		try {
+			while(it.hasNext() || !pending.isEmpty()) {
+				while(it.hasNext() && pending.size() < limit) {
+					List<List<String>> chunk = new ArrayList<List<String>>(CHUNK);
+					while(it.hasNext() && chunk.size() < CHUNK) {
+						chunk.add(it.next());
+					}
+					Chunk task = new Chunk(read, chunk, seed);
+					pending.add(ordered ? pool.submit(task) : completed.submit(task));
+					read += chunk.size();
+				}
+
+				Future<Chunk> next;
+				if(ordered) {
+					next = pending.poll();
+				}
+				else {
+					next = completed.take();
+					pending.remove(next);
+				}
+
+				Chunk done = next.get();
+				tokens += done.tokens;
+				for(int s = 0; s < counts.length; s++) {
+					counts[s] += done.counts[s];
+				}
+				for(int i = 0; i < done.parses.length; i++) {
+					if(ordered) {
+						parses.add(done.parses[i]);
+					}
+					else {
+						consumer.accept(done.parses[i], done.start + i);
+					}
+				}
+			}
+		}
+		catch(InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new PepException("batch interrupted", ie);
+		}
+		catch(ExecutionException ee) {
+			Throwable cause = ee.getCause();
+			if(cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw (cause instanceof RuntimeException) ? (RuntimeException)cause
+				: new IllegalStateException(cause);
+		}
+		finally {
+			for(Future<Chunk> f : pending) { // if the batch ended early
+				f.cancel(false);
+			}
+		}
+
+		return new Batch(parses, counts[Status.ACCEPT.ordinal()],
+			counts[Status.REJECT.ordinal()], counts[Status.ERROR.ordinal()],
+			tokens, System.nanoTime() - start);
+	}
+
+	/**
+	 * Parses a chunk of consecutive inputs in one task.
+	 */
+	class Chunk implements Callable<Chunk> {
+		final int start;
+		final List<List<String>> inputs;
+		final Category seed;
+		final Parse[] parses;
+		final int[] counts = new int[Status.values().length]; // by status
+		long tokens;
+
+		Chunk(int start, List<List<String>> inputs, Category seed) {
+			this.start = start;
+			this.inputs = inputs;
+			this.seed = seed;
+			parses = new Parse[inputs.size()];
+		}
+
+		public Chunk call() throws PepException {
+			for(int i = 0; i < parses.length; i++) {
+				List<String> input = inputs.get(i);
+				IncrementalParse session = new IncrementalParse(parser, seed);
+				try {
+					if(input == null || input.isEmpty()) {
+						session.fireParseError(0, "null or empty tokens");
+					}
+					else {
+						tokens += input.size();
+						for(String token : input) {
+							session.offer(token);
+						}
+					}
+				}
+				catch(PepException pe) {
+					// the parse is marked as an error, the batch goes on
+				}
+
+				parses[i] = session.finish();
+				counts[parses[i].getStatus().ordinal()]++;
+			}
+
+			return this;
+		}
+	}
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Writes {@link Grammar grammars} in a compact binary format, and reads
+ * them back, much faster than grammars are loaded from XML since there is
+ * no document to build and no schema to validate against.
+ * <p>
+ * A binary grammar starts with the bytes <code>PepG</code> and the version
+ * of the format, {@value #VERSION}, followed by the grammar's name, a table
+ * of its categories, and its rules, each given by the indexes of its
+ * categories in the table. Each category is written once, however many
+ * rules it occurs in, and read back as a single object shared by those
+ * rules. Terminals that are {@link CategorySet sets of tokens} or
+ * {@link CategoryCharacterSet sets of characters} are written as such;
+ * categories of any other subclass cannot be written.
+ * @see #write(Grammar, OutputStream)
+ * @see #read(InputStream)
+ */
+public final class BinaryGrammar {
+	/**
+	 * The version of the binary format written, the only one that can be
+	 * read.
+	 */
+	public static final int VERSION = 1;
+
+	static final int MAGIC = 0x50657047; // "PepG"
+
+	// kinds of categories and character sets
+	static final byte CATEGORY = 0, TOKEN_SET = 1, CHARACTER_SET = 2;
+	static final byte LITERAL = 0, RANGE = 1, UNICODE_CLASS = 2;
+
+	private static final int CHUNK = 8192; // most allocated before reading
+
+	private BinaryGrammar() {
+		// only static methods
+	}
+
+	/**
+	 * Tests whether a stream holds a binary grammar, by its first bytes. The
+	 * stream must {@link InputStream#markSupported() support marks}, and is
+	 * reset to where it was.
+	 * @return <code>true</code> iff the stream starts with the bytes of a
+	 * binary grammar, of any version.
+	 */
+	public static boolean isBinary(InputStream in) throws IOException {
+		in.mark(4);
+		try {
+			int magic = 0;
+			for(int i = 0; i < 4; i++) {
+				int b = in.read();
+				if(b < 0) {
+					return false;
+				}
+				magic = (magic << 8) | b;
+			}
+
+			return (magic == MAGIC);
+		}
+		finally {
+			in.reset();
+		}
+	}
+
+	/**
+	 * Writes a grammar in the binary format. The stream is flushed, but not
+	 * closed.
+	 * @throws PepException If the grammar contains a category of a class
+	 * other than {@link Category}, {@link CategorySet}, and
+	 * {@link CategoryCharacterSet}.
+	 */
+	public static void write(Grammar grammar, OutputStream out)
+			throws IOException, PepException {
+		List<Category> categories = new ArrayList<Category>();
+		Map<Category, Integer> ids = new HashMap<Category, Integer>();
+		int ruleCount = 0;
+		for(Set<Rule> rules : grammar.rules.values()) {
+			for(Rule rule : rules) {
+				id(rule.left, categories, ids);
+				for(Category c : rule.right) {
+					id(c, categories, ids);
+				}
+				ruleCount++;
+			}
+		}
+
+		DataOutputStream data
+			= new DataOutputStream(new BufferedOutputStream(out));
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		writeString(data, grammar.name);
+
+		data.writeInt(categories.size());
+		for(Category c : categories) {
+			writeCategory(data, c);
+		}
+
+		data.writeInt(ruleCount);
+		for(Set<Rule> rules : grammar.rules.values()) {
+			for(Rule rule : rules) {
+				data.writeInt(ids.get(rule.left));
+				data.writeInt(rule.right.length);
+				for(Category c : rule.right) {
+					data.writeInt(ids.get(c));
+				}
+			}
+		}
+
+		data.flush();
+	}
+
+	/**
+	 * Reads a grammar in the binary format. The stream is not closed.
+	 * @throws PepException If the stream does not hold a binary grammar of
+	 * this {@link #VERSION version}, or its contents are not valid.
+	 * @throws IOException If the stream cannot be read, or ends before the
+	 * grammar does.
+	 */
+	public static Grammar read(InputStream in)
+			throws IOException, PepException {
+		DataInputStream data = new DataInputStream(
+			(in instanceof BufferedInputStream) ? in
+				: new BufferedInputStream(in));
+		if(data.readInt() != MAGIC) {
+			throw new PepException("not a binary grammar");
+		}
+		int version = data.readInt();
+		if(version != VERSION) {
+			throw new PepException("unsupported binary grammar version: "
+				+ version);
+		}
+
+		try {
+			Grammar grammar = new Grammar(readString(data));
+			int categoryCount = readCount(data);
+			List<Category> categories
+				= new ArrayList<Category>(capacity(categoryCount));
+			for(int i = 0; i < categoryCount; i++) {
+				categories.add(readCategory(data));
+			}
+
+			int ruleCount = readCount(data);
+			List<Category> right = new ArrayList<Category>();
+			for(int r = 0; r < ruleCount; r++) {
+				Category left = categories.get(data.readInt());
+				int length = readCount(data);
+				for(int i = 0; i < length; i++) {
+					right.add(categories.get(data.readInt()));
+				}
+				grammar.addRule(new Rule(left,
+					right.toArray(new Category[right.size()])));
+				right.clear();
+			}
+
+			return grammar;
+		}
+		catch(IndexOutOfBoundsException ioobe) {
+			throw new PepException("invalid binary grammar", ioobe);
+		}
+		catch(IllegalArgumentException iae) {
+			throw new PepException("invalid binary grammar", iae);
+		}
+	}
+
+	/**
+	 * Reads the number of elements that follow.
+	 * @throws PepException If it is negative.
+	 */
+	private static int readCount(DataInputStream data)
+			throws IOException, PepException {
+		int count = data.readInt();
+		if(count < 0) {
+			throw new PepException("invalid binary grammar: count " + count);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Gets the initial capacity of a list for a number of elements read from
+	 * the stream, which is not trusted: a list of a corrupt or hostile
+	 * length grows only as its elements are actually read, until the stream
+	 * ends.
+	 */
+	private static int capacity(int count) {
+		return Math.min(count, CHUNK);
+	}
+
+	private static void id(Category category, List<Category> categories,
+			Map<Category, Integer> ids) throws PepException {
+		if(!ids.containsKey(category)) {
+			Class<?> c = category.getClass();
+			if(c != Category.class && c != CategorySet.class
+					&& c != CategoryCharacterSet.class) {
+				throw new PepException("cannot write category " + category
+					+ " of " + c);
+			}
+
+			ids.put(category, categories.size());
+			categories.add(category);
+		}
+	}
+
+	private static void writeCategory(DataOutputStream data,
+			Category category) throws IOException {
+		if(category instanceof CategorySet) {
+			CategorySet set = (CategorySet)category;
+			data.writeByte(TOKEN_SET);
+			writeString(data, set.name);
+			data.writeBoolean(set.negated);
+			data.writeInt(set.tokens.size());
+			for(String token : set.tokens) {
+				writeString(data, token);
+			}
+		}
+		else if(category instanceof CategoryCharacterSet) {
+			CategoryCharacterSet set = (CategoryCharacterSet)category;
+			data.writeByte(CHARACTER_SET);
+			writeString(data, set.name);
+			data.writeBoolean(set.inclusion);
+			data.writeInt(set.ranges.size());
+			for(CharacterSet range : set.ranges) {
+				if(range.charClass != null) {
+					data.writeByte(UNICODE_CLASS);
+					writeString(data, range.charClass);
+				}
+				else if(range.literal != null) {
+					data.writeByte(LITERAL);
+					writeString(data, range.literal);
+				}
+				else {
+					data.writeByte(RANGE);
+					data.writeInt(range.first);
+					data.writeInt(range.last);
+				}
+			}
+		}
+		else {
+			data.writeByte(CATEGORY);
+			writeString(data, category.name);
+			data.writeBoolean(category.terminal);
+		}
+	}
+
+	private static Category readCategory(DataInputStream data)
+			throws IOException, PepException {
+		byte kind = data.readByte();
+		String name = readString(data);
+		boolean flag = data.readBoolean();
+		if(kind == CATEGORY) {
+			return new Category(name, flag);
+		}
+
+		int count = readCount(data);
+		if(kind == TOKEN_SET) {
+			List<String> tokens = new ArrayList<String>(capacity(count));
+			for(int i = 0; i < count; i++) {
+				tokens.add(readString(data));
+			}
+
+			return flag ? CategorySet.exclusion(name, tokens)
+				: CategorySet.inclusion(name, tokens);
+		}
+		else if(kind == CHARACTER_SET) {
+			List<CharacterSet> ranges
+				= new ArrayList<CharacterSet>(capacity(count));
+			for(int i = 0; i < count; i++) {
+				byte k = data.readByte();
+				if(k == UNICODE_CLASS) {
+					ranges.add(CharacterSet.unicodeClass(readString(data)));
+				}
+				else if(k == LITERAL) {
+					ranges.add(CharacterSet.literal(readString(data)));
+				}
+				else if(k == RANGE) {
+					ranges.add(CharacterSet.range(data.readInt(), data.readInt()));
+				}
+				else {
+					throw new PepException("invalid character set kind: " + k);
+				}
+			}
+
+			return flag ? CategoryCharacterSet.inclusion(name, ranges)
+				: CategoryCharacterSet.exclusion(name, ranges);
+		}
+
+		throw new PepException("invalid category kind: " + kind);
+	}
+
+	/**
+	 * Writes a string, which may be <code>null</code>, as its length in
+	 * bytes and its UTF-8 encoding, so that it is not limited in length as
+	 * it would be by {@link DataOutputStream#writeUTF(String)}.
+	 */
+	private static void writeString(DataOutputStream data, String s)
+			throws IOException {
+		if(s == null) {
+			data.writeInt(-1);
+		}
+		else {
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			data.writeInt(bytes.length);
+			data.write(bytes);
+		}
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString(DataOutputStream,
+	 * String)}, in chunks if it is long, so that a corrupt length does not
+	 * allocate more than the stream holds.
+	 * @throws PepException If its length is negative, other than the
+	 * <code>-1</code> that stands for <code>null</code>.
+	 */
+	private static String readString(DataInputStream data)
+			throws IOException, PepException {
+		int length = data.readInt();
+		if(length == -1) {
+			return null;
+		}
+		if(length < 0) {
+			throw new PepException("invalid binary grammar: length " + length);
+		}
+
+		byte[] bytes = new byte[capacity(length)];
+		data.readFully(bytes);
+		if(length > bytes.length) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+			out.write(bytes);
+			for(int left = length - bytes.length; left > 0; left -= CHUNK) {
+				int n = Math.min(left, CHUNK);
+				data.readFully(bytes, 0, n);
+				out.write(bytes, 0, n);
+			}
+			bytes = out.toByteArray();
+		}
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -121,6 +121,21 @@ public class Category {
 		return name.equals(token) || (ignoreCase && name.equalsIgnoreCase(token));
 	}
 
+	/**
+	 * Tests whether a token consisting of a single code point matches this
+	 * category. This is how categories are tested when the input is
+	 * {@link EarleyParser#parseCharacters(CharSequence, Category) parsed
+	 * character by character}, so subclasses that match characters should
+	 * override it to avoid creating a string for each one.
+	 * @param codePoint The input character.
+	 * @param ignoreCase Should case be ignored?
+	 * @return <code>true</code> iff the token made of <code>codePoint</code>
+	 * {@link #matches(String, boolean) matches} this category.
+	 */
+	public boolean matches(int codePoint, boolean ignoreCase) {
+		return matches(new String(Character.toChars(codePoint)), ignoreCase);
+	}
+
 	/**
 	 * Computes a hash code for this category based on its name and terminal
 	 * status.
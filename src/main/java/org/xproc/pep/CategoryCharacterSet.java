@@ -28,6 +28,9 @@ import java.util.List;
  * in any range, or an <em>exclusion</em>, where it matches any character that does
  * not appear in <em>any</em> range.</p>
  *
+ * <p>The ranges are compiled into a single bitmap of the characters the set matches
+ * the first time it is used, with the exclusion already taken into account.</p>
+ *
  * <p>For example, given <code>letters</code>, a range representing any Unicode character
  * in the "letter" class, and <code>digits</code>, a range representing the digits "0" to "9", inclusive:</p>
  * <ul>
@@ -46,8 +49,9 @@ import java.util.List;
  */
 
 public class CategoryCharacterSet extends Category {
-    private final List<CharacterSet> ranges;
-    private final boolean inclusion;
+    final List<CharacterSet> ranges;
+    final boolean inclusion;
+    private CodePointSet members = null; // compiled on first use
 
     private CategoryCharacterSet(String name, List<CharacterSet> ranges, boolean inclusion) {
         super(name, true);
@@ -134,26 +138,47 @@ public class CategoryCharacterSet extends Category {
      */
     @Override
     public boolean matches(String token, boolean ignoreCase) {
-        if (token.codePointCount(0, token.length()) > 1) {
+        if (token.isEmpty() || token.codePointCount(0, token.length()) > 1) {
             return false;
         }
-        int cp = token.codePointAt(0);
-        if (ignoreCase) {
-            cp = Character.toUpperCase(cp);
+        return matches(token.codePointAt(0), ignoreCase);
+    }
+
+    /**
+     * Tests whether a given character matches this category.
+     * @param codePoint The input character.
+     * @param ignoreCase Should case be ignored?
+     * @return <code>true</code> iff the character is considered a match for this category.
+     */
+    @Override
+    public boolean matches(int codePoint, boolean ignoreCase) {
+        CodePointSet m = members();
+        if (!ignoreCase) {
+            return m.contains(codePoint);
         }
-        for (CharacterSet range : ranges) {
-            boolean found = false;
-            if (ignoreCase) {
-                found = range.matches(Character.toUpperCase(cp)) || range.matches(Character.toLowerCase(cp));
-            } else {
-                found = range.matches(cp);
-            }
-            if ((found && inclusion) || (!found && !inclusion)) {
-                return true;
-            }
+        int upper = Character.toUpperCase(codePoint);
+        int lower = Character.toLowerCase(upper);
+        if (inclusion) {
+            return m.contains(upper) || m.contains(lower);
+        } else { // neither case is in any range
+            return m.contains(upper) && m.contains(lower);
         }
+    }
 
-        return false;
+    /**
+     * Gets the characters this category matches, compiling them the first time.
+     */
+    private CodePointSet members() {
+        CodePointSet m = members;
+        if (m == null) { // immutable, so racing threads just compile it twice
+            CodePointSet.Builder b = new CodePointSet.Builder();
+            for (CharacterSet range : ranges) {
+                b.addAll(range.members());
+            }
+            m = inclusion ? b.build() : b.build().complement();
+            members = m;
+        }
+        return m;
     }
 
     @Override
@@ -9,8 +9,12 @@
  */
 package org.xproc.pep;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * A special kind of {@link Category category} that represents sets of tokens.
@@ -24,15 +28,37 @@ import java.util.List;
  * <p>A set can be an <em>inclusion</em>, where it matches any string that appears
  * in the set, or an <em>exclusion</em>, where it matches any string that does
  * not appear in the set.</p>
+ *
+ * <p>The tokens are hashed when the set is created, along with their case-folded forms,
+ * so matching a token takes about the same time however many tokens the set has.
+ * Changing the list of tokens afterward has no effect on matching.</p>
  */
 public class CategorySet extends Category {
-    private final boolean negated;
-    private final List<String> tokens;
+    final boolean negated;
+    final List<String> tokens;
+    final Set<String> members;
+    private final Map<String, String[]> folded; // tokens by case-folded form
 
     private CategorySet(String name, List<String> tokens, boolean negated) {
         super(name, true);
         this.tokens = tokens;
         this.negated = negated;
+
+        members = new HashSet<>(tokens);
+        folded = new HashMap<>();
+        for (String token : members) {
+            if (token != null) {
+                String key = CompiledGrammar.fold(token);
+                String[] same = folded.get(key);
+                if (same == null) {
+                    folded.put(key, new String[] {token});
+                } else {
+                    same = Arrays.copyOf(same, same.length + 1);
+                    same[same.length - 1] = token;
+                    folded.put(key, same);
+                }
+            }
+        }
     }
 
     /**
@@ -67,23 +93,7 @@ public class CategorySet extends Category {
             CategorySet oc = (CategorySet)obj;
             if (oc != Category.START &&
                     terminal == oc.terminal && name.equals(oc.name)) {
-                HashMap<String,Boolean> myTokens = new HashMap<>();
-                for (String token : tokens) {
-                    myTokens.put(token, false);
-                }
-                for (String token : oc.tokens) {
-                    if (myTokens.containsKey(token)) {
-                        myTokens.put(token, true);
-                    } else {
-                        return false;
-                    }
-                }
-                for (String token : myTokens.keySet()) {
-                    if (!myTokens.get(token)) {
-                        return false;
-                    }
-                }
-                return true;
+                return members.equals(oc.members);
             }
         }
 
@@ -98,9 +108,17 @@ public class CategorySet extends Category {
      */
     @Override
     public boolean matches(String token, boolean ignoreCase) {
-        boolean found = false;
-        for (String item : tokens) {
-            found = found || item.equals(token) || (ignoreCase && item.equalsIgnoreCase(token));
+        boolean found = members.contains(token);
+        if (!found && ignoreCase && token != null) {
+            String[] same = folded.get(CompiledGrammar.fold(token));
+            if (same != null) { // folding may be coarser than equalsIgnoreCase
+                for (String item : same) {
+                    if (item.equalsIgnoreCase(token)) {
+                        found = true;
+                        break;
+                    }
+                }
+            }
         }
         if (negated) {
             return !found;
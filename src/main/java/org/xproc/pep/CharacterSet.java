@@ -9,22 +9,34 @@
  */
 package org.xproc.pep;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
  * A class that represents a range of Unicode characters.
  * <p>Ranges can be constructed from a literal string, from a range of Unicode codepoints, or
  * via Unicode character classes.</p>
+ * <p>Whatever way it is constructed, a set is compiled into a bitmap of the characters it contains
+ * the first time it is used, so that testing a character does not create any objects. The characters
+ * of a Unicode class are only found once, and shared by all the sets for that class.</p>
  */
 public class CharacterSet {
-    private String charClass = null;
+    // general category names, indexed by the types of java.lang.Character
+    private static final String[] CATEGORIES = {
+        "Cn", "Lu", "Ll", "Lt", "Lm", "Lo", "Mn", "Me", "Mc", "Nd", "Nl", "No", "Zs", "Zl", "Zp", "Cc",
+        "Cf", null, "Co", "Cs", "Pd", "Ps", "Pe", "Pc", "Po", "Sm", "Sc", "Sk", "So", "Pi", "Pf"
+    };
+    private static final Map<String, CodePointSet> classes = new ConcurrentHashMap<>();
+
+    String charClass = null;
     private Pattern pattern = null;
-    private String literal = null;
-    private Set<Integer> codepoints = null;
-    private int first = 0;
-    private int last = 0;
+    String literal = null;
+    private CodePointSet codepoints = null;
+    int first = 0;
+    int last = 0;
+    private CodePointSet members = null; // compiled on first use
 
     private CharacterSet(int first, int last) {
         if (first < 0 || last < 0) {
@@ -38,9 +50,8 @@ public class CharacterSet {
     }
 
     private CharacterSet(String literal) {
-        HashSet<Integer> cps = new HashSet<>();
-        literal.codePoints().forEach(cps::add);
-        codepoints = cps;
+        codepoints = CodePointSet.of(literal);
+        members = codepoints;
         this.literal = literal;
     }
 
@@ -112,28 +123,69 @@ public class CharacterSet {
         if (obj instanceof CharacterSet) {
             CharacterSet range = (CharacterSet) obj;
             return first == range.first && last == range.last
-                    && ((pattern == null && range.pattern == null)
-                         || (pattern != null && pattern.equals(range.pattern)))
-                    && ((codepoints == null && range.codepoints == null)
-                         || (codepoints != null && codepoints.equals(range.codepoints)));
+                    && Objects.equals(charClass, range.charClass)
+                    && Objects.equals(codepoints, range.codepoints);
         }
         return false;
     }
 
+    /**
+     * Computes a hash code for this set, consistent with {@link #equals(Object)}.
+     * @return The hash code.
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(first, last, charClass, codepoints);
+    }
+
     /**
      * Test if a code point occurs in the set.
      * @param codepoint The Unicode codepoint to test.
      * @return true if and only if the codepoint is in the set.
      */
     public boolean matches(int codepoint) {
-        if (pattern != null) {
-            String str = new StringBuilder().appendCodePoint(codepoint).toString();
-            return pattern.matcher(str).matches();
-        } else if (codepoints != null) {
-            return codepoints.contains(codepoint);
-        } else {
-            return codepoint >= first && codepoint <= last;
+        return members().contains(codepoint);
+    }
+
+    /**
+     * Gets the characters in this set, compiling them the first time.
+     * @return The characters.
+     */
+    CodePointSet members() {
+        CodePointSet m = members;
+        if (m == null) { // immutable, so racing threads just compile it twice
+            if (pattern != null) {
+                m = classes.computeIfAbsent(charClass, CharacterSet::compileClass);
+            } else {
+                m = CodePointSet.range(first, last);
+            }
+            members = m;
+        }
+        return m;
+    }
+
+    /**
+     * Finds the characters in a Unicode general category, or in a group of categories
+     * with the same first letter, or in the cased letters <code>LC</code>.
+     * Any other class is tested with its regular expression, once for each character.
+     */
+    private static CodePointSet compileClass(String charClass) {
+        int types = 0;
+        for (int type = 0; type < CATEGORIES.length; type++) {
+            String name = CATEGORIES[type];
+            if (name != null && (name.equals(charClass)
+                    || (charClass.length() == 1 && name.charAt(0) == charClass.charAt(0))
+                    || (charClass.equals("LC") && (name.equals("Lu") || name.equals("Ll") || name.equals("Lt"))))) {
+                types |= 1 << type;
+            }
+        }
+
+        if (types == 0) {
+            Pattern pattern = Pattern.compile("\\" + "p{" + charClass + "}");
+            return CodePointSet.matching(cp -> pattern.matcher(new String(Character.toChars(cp))).matches());
         }
+        final int mask = types;
+        return CodePointSet.matching(cp -> (mask & (1 << Character.getType(cp))) != 0);
     }
 
     @Override
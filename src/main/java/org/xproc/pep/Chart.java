@@ -25,6 +25,12 @@ import java.util.TreeMap;
  * they originate. Since the edge sets are {@link Set sets}, an edge can only
  * be added at a given index once (as sets do not permit duplicate members).
  * Edge sets are not guaranteed to maintain edges in their order of insertion.
+ * <p>
+ * Charts returned by an {@link EarleyParser Earley parser} are views over the
+ * parser's array-backed item storage rather than copies of it. Modifying such
+ * a chart by {@link #addEdge(Integer, Edge) adding edges} or
+ * {@link #clear() clearing} it first copies its edges, so that the parse the
+ * chart came from is left unchanged.
  * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
  * @version $LastChangedRevision: 2070 $
  */
@@ -32,6 +38,7 @@ public class Chart {
 	static final Integer NULL_INDEX = new Integer(-1);
 	
 	SortedMap<Integer, Set<Edge>> edgeSets;
+	ItemChart items; // non-null while this chart is a view of parser items
 	
 	/**
 	 * Creates a new chart, initializing its internal data structure.
@@ -48,7 +55,7 @@ public class Chart {
 	 * @since 0.4
 	 */
 	public Chart(Chart chart) {
-		this(new TreeMap<Integer, Set<Edge>>(chart.edgeSets));
+		this(copyEdgeSets(chart.edgeSets));
 	}
 	
 	/**
@@ -62,6 +69,36 @@ public class Chart {
 		this.edgeSets = edgeSets;
 	}
 	
+	/**
+	 * Creates a new chart that is a view of the specified item chart.
+	 * @param items The item chart filled by an Earley parser.
+	 * @see ItemChart#edgeSets()
+	 */
+	Chart(ItemChart items) {
+		this(items.edgeSets());
+		this.items = items;
+	}
+	
+	private static SortedMap<Integer, Set<Edge>> copyEdgeSets(
+			SortedMap<Integer, Set<Edge>> edgeSets) {
+		SortedMap<Integer, Set<Edge>> copy = new TreeMap<Integer, Set<Edge>>();
+		for(Map.Entry<Integer, Set<Edge>> entry : edgeSets.entrySet()) {
+			copy.put(entry.getKey(), new HashSet<Edge>(entry.getValue()));
+		}
+		
+		return copy;
+	}
+	
+	/**
+	 * Replaces a view of an item chart by a modifiable copy of its edges.
+	 */
+	private void detach() {
+		if(edgeSets instanceof ItemChart.EdgeSets) {
+			edgeSets = copyEdgeSets(edgeSets);
+			items = null;
+		}
+	}
+	
 	/**
 	 * Gets the set of indices at which this chart contains edges. For any
 	 * member of this set, {@link #getEdges(Integer)} will return a non-empty 
@@ -142,7 +179,7 @@ public class Chart {
 	 * @since 0.2
 	 */
 	public boolean contains(Edge edge) {
-		return !indexOf(edge).equals(Chart.NULL_INDEX);
+		return indexOf(edge).intValue() != Chart.NULL_INDEX.intValue();
 	}
 	
 	/**
@@ -155,6 +192,16 @@ public class Chart {
 	 */
 	public Integer indexOf(Edge edge) {
 		if(edge != null) {
+			if(items != null) { // only the edge's dotted rule needs lookup
+				for(int i = 0; i < items.length; i++) {
+					if(items.find(i, edge) >= 0) {
+						return i;
+					}
+				}
+				
+				return Chart.NULL_INDEX;
+			}
+			
 			for(Map.Entry<Integer, Set<Edge>> entry : edgeSets.entrySet()) {
 				if(entry.getValue().contains(edge)) {
 					return entry.getKey();
@@ -170,6 +217,7 @@ public class Chart {
 	 * @since 0.4
 	 */
 	public void clear() {
+		detach();
 		edgeSets.clear();
 	}
 	
@@ -190,6 +238,10 @@ public class Chart {
 	 * <code>index</code>.
 	 */
 	public boolean containsEdges(Integer index) {
+		if(items != null) {
+			return items.containsItems(index.intValue());
+		}
+		
 		return edgeSets.containsKey(index);
 	}
 	
@@ -201,6 +253,17 @@ public class Chart {
 	public int countEdges() {
 		int count = 0;
 		
+		if(items != null) {
+			for(int i = 0; i < items.length; i++) {
+				EarleySet set = items.get(i);
+				if(set != null) {
+					count += set.size;
+				}
+			}
+			
+			return count;
+		}
+		
 		for(Set<Edge> edgeSet : edgeSets.values()) {
 			count += edgeSet.size();
 		}
@@ -251,6 +314,7 @@ public class Chart {
 			throw new IndexOutOfBoundsException("invalid index: " + index);
 		}
 		
+		detach();
 		Set<Edge> edges = edgeSets.get(index); // already edges at index?
 		if(edges == null) { // create and add edge set if none exists at index
 			edges = new HashSet<Edge>();
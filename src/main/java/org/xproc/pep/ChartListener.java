@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.util.EventListener;
+
+
+/**
+ * Listens to the items an {@link EarleyParser Earley parser} adds to its
+ * chart, as plain numbers. Unlike a {@link ParserListener}, which is handed
+ * an {@link EdgeEvent event} with an {@link Edge edge} for each one, a chart
+ * listener is notified without any object being created, so it can watch
+ * every item of a long parse at little cost.
+ * <p>
+ * An item is given by the index of the Earley set it was added to, the
+ * identifier of its rule in the {@link CompiledGrammar compiled grammar}
+ * the parse was started with, the position of its dot in the right side
+ * of that rule, and its origin. The rule with a given identifier is
+ * {@link CompiledGrammar#getRule(int)
+ * <code>parser.getGrammar().compile().getRule(rule)</code>}, provided the
+ * grammar has not changed since. The item the parser is seeded with, for a
+ * rule whose left side is {@link Category#START}, is reported as predicted.
+ * <p>
+ * While a chart listener is set,
+ * {@link ParserOption#MEMOIZE_RIGHT_RECURSION right recursion memoization}
+ * is not used, so that every completed item is reported. A chart listener
+ * is notified from every thread that parses with the parser.
+ * @see EarleyParser#setChartListener(ChartListener)
+ */
+public interface ChartListener extends EventListener {
+	/**
+	 * Notifies the listener that an item was added by prediction.
+	 * @param index The index of the Earley set the item was added to.
+	 * @param rule The identifier of the item's rule.
+	 * @param dot The position of the item's dot, <code>0</code> for a
+	 * predicted item.
+	 * @param origin The index where the item began.
+	 */
+	public void itemPredicted(int index, int rule, int dot, int origin);
+
+	/**
+	 * Notifies the listener that an item was added by scanning a token.
+	 * @param index The index of the Earley set the item was added to, just
+	 * after the token.
+	 * @param rule The identifier of the item's rule.
+	 * @param dot The position of the item's dot, just after the terminal.
+	 * @param origin The index where the item began.
+	 */
+	public void itemScanned(int index, int rule, int dot, int origin);
+
+	/**
+	 * Notifies the listener that an item was added by completion.
+	 * @param index The index of the Earley set the item was added to.
+	 * @param rule The identifier of the item's rule.
+	 * @param dot The position of the item's dot, just after the completed
+	 * category.
+	 * @param origin The index where the item began.
+	 */
+	public void itemCompleted(int index, int rule, int dot, int origin);
+}
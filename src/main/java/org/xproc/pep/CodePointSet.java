@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import static java.lang.Character.MAX_CODE_POINT;
+import static java.lang.Character.MIN_SUPPLEMENTARY_CODE_POINT;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+
+/**
+ * An immutable set of Unicode code points, which is what
+ * {@link CharacterSet character sets} and {@link CategoryCharacterSet
+ * character set categories} are compiled into.
+ * <p>
+ * Code points in the Basic Multilingual Plane are kept in a bitmap, which
+ * is cut short after the last word with any bit set. Supplementary code
+ * points are kept as a sorted array of disjoint ranges, which is searched
+ * by bisection. Testing a character is therefore a couple of array reads,
+ * without creating any objects.
+ * @see Builder
+ */
+final class CodePointSet {
+	private final long[] bmp; // one bit per code point below 0x10000
+	private final int[] ranges; // first and last of each, above the BMP
+
+	private CodePointSet(long[] bmp, int[] ranges) {
+		this.bmp = bmp;
+		this.ranges = ranges;
+	}
+
+	/**
+	 * Creates the set of code points from <code>first</code> to
+	 * <code>last</code>, inclusive.
+	 */
+	static CodePointSet range(int first, int last) {
+		return new Builder().add(first, last).build();
+	}
+
+	/**
+	 * Creates the set of the code points in a string.
+	 */
+	static CodePointSet of(CharSequence s) {
+		Builder b = new Builder();
+		for(int i = 0; i < s.length(); ) {
+			int cp = Character.codePointAt(s, i);
+			b.add(cp, cp);
+			i += Character.charCount(cp);
+		}
+
+		return b.build();
+	}
+
+	/**
+	 * Creates the set of all code points that satisfy a predicate, by testing
+	 * every one of them once.
+	 */
+	static CodePointSet matching(IntPredicate predicate) {
+		Builder b = new Builder();
+		int first = -1; // of the current run
+		for(int cp = 0; cp <= MAX_CODE_POINT; cp++) {
+			if(predicate.test(cp)) {
+				if(first < 0) {
+					first = cp;
+				}
+			}
+			else if(first >= 0) {
+				b.add(first, cp - 1);
+				first = -1;
+			}
+		}
+		if(first >= 0) {
+			b.add(first, MAX_CODE_POINT);
+		}
+
+		return b.build();
+	}
+
+	/**
+	 * Tests whether this set contains a code point.
+	 * @param codePoint The code point, which may be outside the range of
+	 * valid code points.
+	 */
+	boolean contains(int codePoint) {
+		if(codePoint < MIN_SUPPLEMENTARY_CODE_POINT) {
+			int w = codePoint >> 6;
+			return (codePoint >= 0 && w < bmp.length
+				&& (bmp[w] & (1L << codePoint)) != 0);
+		}
+
+		int low = 0, high = (ranges.length >> 1) - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			if(codePoint < ranges[mid << 1]) {
+				high = mid - 1;
+			}
+			else if(codePoint > ranges[(mid << 1) + 1]) {
+				low = mid + 1;
+			}
+			else {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Gets the set of the valid code points not in this set.
+	 */
+	CodePointSet complement() {
+		long[] words = new long[MIN_SUPPLEMENTARY_CODE_POINT >> 6];
+		for(int w = 0; w < words.length; w++) {
+			words[w] = (w < bmp.length) ? ~bmp[w] : -1L;
+		}
+
+		int[] gaps = new int[ranges.length + 2];
+		int count = 0, next = MIN_SUPPLEMENTARY_CODE_POINT;
+		for(int r = 0; r < ranges.length; r += 2) {
+			if(ranges[r] > next) {
+				gaps[count++] = next;
+				gaps[count++] = ranges[r] - 1;
+			}
+			next = ranges[r + 1] + 1;
+		}
+		if(next <= MAX_CODE_POINT) {
+			gaps[count++] = next;
+			gaps[count++] = MAX_CODE_POINT;
+		}
+
+		int length = words.length;
+		while(length > 0 && words[length - 1] == 0L) {
+			length--;
+		}
+
+		return new CodePointSet(Arrays.copyOf(words, length),
+			Arrays.copyOf(gaps, count));
+	}
+
+	/**
+	 * Tests whether this set contains the same code points as another.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if(obj instanceof CodePointSet) {
+			CodePointSet os = (CodePointSet)obj;
+			return Arrays.equals(bmp, os.bmp) && Arrays.equals(ranges, os.ranges);
+		}
+
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(bmp) + Arrays.hashCode(ranges);
+	}
+
+	/**
+	 * Collects code points into a {@link CodePointSet}.
+	 */
+	static final class Builder {
+		private final long[] bmp = new long[MIN_SUPPLEMENTARY_CODE_POINT >> 6];
+		private int[] ranges = new int[8]; // in no order, may overlap
+		private int count;
+
+		/**
+		 * Adds the code points from <code>first</code> to <code>last</code>,
+		 * inclusive.
+		 */
+		Builder add(int first, int last) {
+			for(int cp = first; cp <= last && cp < MIN_SUPPLEMENTARY_CODE_POINT;
+					cp++) {
+				bmp[cp >> 6] |= 1L << cp;
+			}
+
+			if(last >= MIN_SUPPLEMENTARY_CODE_POINT) {
+				if(count == ranges.length) {
+					ranges = Arrays.copyOf(ranges, count << 1);
+				}
+				ranges[count++] = Math.max(first, MIN_SUPPLEMENTARY_CODE_POINT);
+				ranges[count++] = last;
+			}
+
+			return this;
+		}
+
+		/**
+		 * Adds all the code points of a set.
+		 */
+		Builder addAll(CodePointSet set) {
+			for(int w = 0; w < set.bmp.length; w++) {
+				bmp[w] |= set.bmp[w];
+			}
+			for(int r = 0; r < set.ranges.length; r += 2) {
+				add(set.ranges[r], set.ranges[r + 1]);
+			}
+
+			return this;
+		}
+
+		/**
+		 * Creates a set of the code points added so far, merging ranges that
+		 * overlap or touch.
+		 */
+		CodePointSet build() {
+			int words = bmp.length;
+			while(words > 0 && bmp[words - 1] == 0L) {
+				words--;
+			}
+
+			long[] pairs = new long[count >> 1]; // sort by first, then last
+			for(int r = 0; r < count; r += 2) {
+				pairs[r >> 1] = ((long)ranges[r] << 32) | ranges[r + 1];
+			}
+			Arrays.sort(pairs);
+
+			int[] merged = new int[count];
+			int size = 0;
+			for(long pair : pairs) {
+				int first = (int)(pair >>> 32), last = (int)pair;
+				if(size > 0 && first <= merged[size - 1] + 1) {
+					merged[size - 1] = Math.max(merged[size - 1], last);
+				}
+				else {
+					merged[size++] = first;
+					merged[size++] = last;
+				}
+			}
+
+			return new CodePointSet(Arrays.copyOf(bmp, words),
+				Arrays.copyOf(merged, size));
+		}
+	}
+}
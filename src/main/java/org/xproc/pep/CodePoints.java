@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+
+/**
+ * The tokens of a parse whose input was read character by character, kept
+ * as an array of code points. A string is only created for a token when it
+ * is asked for.
+ * @see EarleyParser#parseCharacters(CharSequence, Category)
+ */
+final class CodePoints extends AbstractList<String> implements RandomAccess {
+	private int[] codePoints = new int[16];
+	private int size;
+
+	/**
+	 * Tests whether a token can be kept as a code point, that is, whether it
+	 * consists of exactly one.
+	 */
+	static boolean isCodePoint(String token) {
+		return (token != null && !token.isEmpty()
+			&& token.length() == Character.charCount(token.codePointAt(0)));
+	}
+
+	/**
+	 * Adds a token consisting of a single code point.
+	 */
+	void add(int codePoint) {
+		if(size == codePoints.length) {
+			codePoints = Arrays.copyOf(codePoints, size << 1);
+		}
+		codePoints[size++] = codePoint;
+		modCount++;
+	}
+
+	/**
+	 * Adds a token at the end of this list.
+	 * @throws IllegalArgumentException If <code>token</code> does not consist
+	 * of a single code point.
+	 * @throws UnsupportedOperationException If <code>index</code> is not the
+	 * end of this list.
+	 */
+	@Override
+	public void add(int index, String token) {
+		if(index != size) {
+			throw new UnsupportedOperationException("can only add at the end");
+		}
+		if(!isCodePoint(token)) {
+			throw new IllegalArgumentException("not a single code point: "
+				+ token);
+		}
+
+		add(token.codePointAt(0));
+	}
+
+	@Override
+	public String get(int index) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("index: " + index);
+		}
+
+		return new String(Character.toChars(codePoints[index]));
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,672 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * A compiled, integer-indexed form of a {@link Grammar grammar}. This is the
+ * representation that {@link EarleyParser Earley parsers} consult while
+ * parsing.
+ * <p>
+ * Compiling a grammar assigns dense integer identifiers to its
+ * {@link Category categories}, to its {@link Rule rules}, and to every dot
+ * position within every rule. Right sides are stored as arrays of category
+ * identifiers, so following a {@link DottedRule dotted rule} to its
+ * {@link DottedRule#getActiveCategory() active category}, or finding the
+ * rules for a {@link Rule#getLeft() left side} category, is an array access
+ * rather than a hash lookup.
+ * <p>
+ * In addition to the rules in the grammar, a compiled grammar contains a
+ * start rule <code>{@link Category#START} -&gt; X</code> for every
+ * non-terminal <code>X</code>, so that any of them can be used to
+ * {@link EarleyParser#parse(Iterable, Category) seed} a parse.
+ * <p>
+ * The categories that can derive the empty string are computed once, when
+ * the grammar is compiled, so that parsers can step over them without ever
+ * revisiting a completed Earley set. Likewise, the categories predicted
+ * along with each non-terminal are computed once, so that a parser predicts
+ * a whole closure at a time instead of rediscovering it at every index.
+ * The {@link #getFirstSet(Category) FIRST set} of every category is also
+ * computed, so that predictions can be filtered by the next input token.
+ * <p>
+ * A compiled grammar is a snapshot: rules added to the underlying grammar
+ * after it was compiled are not reflected in it. Use
+ * {@link Grammar#compile()} to obtain a compiled form that is kept up to
+ * date with the grammar.
+ * @see Grammar#compile()
+ */
+public class CompiledGrammar {
+	final Grammar grammar;
+	final int version;
+
+	final Category[] categories;
+	final boolean[] terminal;
+	final Map<Category, Integer> categoryIds;
+
+	final Rule[] rules;
+	final int[] left;
+	final int[][] right;
+	final boolean[] preterminal;
+	final Map<Rule, Integer> ruleIds;
+
+	final int[][] rulesByLeft;
+	final int[][] singletonPreterminals;
+	final int[][] preterminalsByTerminal; // singleton preterminals
+	final int[] startRules;
+
+	final Map<String, int[]> literals; // terminal identifiers by name
+	final Map<String, int[]> foldedLiterals; // by case-folded name
+	final int[] patterns; // terminals that must be tested, like sets
+
+	final int[] dottedBase;
+	final int[] dottedRule;
+	final int[] dottedNext;
+	final DottedRule[] dottedRules;
+
+	final boolean[] nullable;
+	final int[] nullableRule; // shows a category nullable using smaller ones
+	final int[][] predictionClosure;
+	final BitSet[] first; // terminal identifiers
+
+	final Rule incompatibleRule;
+
+	/**
+	 * Compiles the specified grammar.
+	 * @param grammar The grammar to compile.
+	 * @throws NullPointerException If <code>grammar</code> is
+	 * <code>null</code>.
+	 */
+	public CompiledGrammar(Grammar grammar) {
+		if(grammar == null) {
+			throw new NullPointerException("null grammar");
+		}
+
+		this.grammar = grammar;
+		version = grammar.modCount;
+
+		// number the categories, START first
+		List<Category> cats = new ArrayList<Category>();
+		categoryIds = new HashMap<Category, Integer>();
+		intern(Category.START, cats);
+
+		List<Rule> rs = new ArrayList<Rule>();
+		for(Set<Rule> s : grammar.rules.values()) {
+			for(Rule r : s) {
+				intern(r.left, cats);
+				for(Category c : r.right) {
+					intern(c, cats);
+				}
+				rs.add(r);
+			}
+		}
+
+		categories = cats.toArray(new Category[cats.size()]);
+		terminal = new boolean[categories.length];
+		startRules = new int[categories.length];
+		for(int c = 0; c < categories.length; c++) {
+			terminal[c] = categories[c].terminal;
+			startRules[c] = -1;
+		}
+
+		// every non-terminal can seed a parse
+		for(int c = 1; c < categories.length; c++) {
+			if(!terminal[c]) {
+				startRules[c] = rs.size();
+				rs.add(new Rule(Category.START, categories[c]));
+			}
+		}
+
+		rules = rs.toArray(new Rule[rs.size()]);
+		left = new int[rules.length];
+		right = new int[rules.length][];
+		preterminal = new boolean[rules.length];
+		ruleIds = new HashMap<Rule, Integer>();
+		dottedBase = new int[rules.length];
+
+		int[] ruleCounts = new int[categories.length];
+		int[] singletonCounts = new int[categories.length];
+		int dotted = 0;
+		Rule incompatible = null;
+
+		for(int r = 0; r < rules.length; r++) {
+			Rule rule = rules[r];
+			ruleIds.put(rule, r);
+
+			left[r] = categoryIds.get(rule.left);
+			right[r] = new int[rule.right.length];
+			for(int i = 0; i < rule.right.length; i++) {
+				right[r][i] = categoryIds.get(rule.right[i]);
+			}
+
+			preterminal[r] = rule.isPreterminal();
+			if(preterminal[r]) {
+				if(right[r].length == 1) {
+					singletonCounts[left[r]]++;
+				}
+				else if(incompatible == null) {
+					incompatible = rule;
+				}
+			}
+
+			if(left[r] != 0) { // start rules are looked up by seed
+				ruleCounts[left[r]]++;
+			}
+
+			dottedBase[r] = dotted;
+			dotted += right[r].length + 1;
+		}
+
+		incompatibleRule = incompatible;
+
+		rulesByLeft = new int[categories.length][];
+		singletonPreterminals = new int[categories.length][];
+		preterminalsByTerminal = new int[categories.length][];
+		int[] terminalCounts = new int[categories.length];
+		for(int r = 0; r < rules.length; r++) {
+			if(preterminal[r] && right[r].length == 1) {
+				terminalCounts[right[r][0]]++;
+			}
+		}
+		for(int c = 0; c < categories.length; c++) {
+			rulesByLeft[c] = new int[ruleCounts[c]];
+			singletonPreterminals[c] = new int[singletonCounts[c]];
+			preterminalsByTerminal[c] = new int[terminalCounts[c]];
+			ruleCounts[c] = singletonCounts[c] = terminalCounts[c] = 0;
+		}
+
+		dottedRule = new int[dotted];
+		dottedNext = new int[dotted];
+		dottedRules = new DottedRule[dotted];
+
+		for(int r = 0; r < rules.length; r++) {
+			int l = left[r];
+			if(l != 0) {
+				rulesByLeft[l][ruleCounts[l]++] = r;
+				if(preterminal[r] && right[r].length == 1) {
+					singletonPreterminals[l][singletonCounts[l]++] = r;
+					int t = right[r][0];
+					preterminalsByTerminal[t][terminalCounts[t]++] = r;
+				}
+			}
+
+			for(int i = 0; i <= right[r].length; i++) {
+				int d = dottedBase[r] + i;
+				dottedRule[d] = r;
+				dottedNext[d] = (i < right[r].length) ? right[r][i] : -1;
+				dottedRules[d] = new DottedRule(rules[r], i, d);
+			}
+		}
+
+		// literal terminals are found by name, as are the tokens of
+		// inclusive category sets; others have to be tested
+		literals = new HashMap<String, int[]>();
+		foldedLiterals = new HashMap<String, int[]>();
+		int patternCount = 0;
+		int[] tested = new int[categories.length];
+		for(int c = 0; c < categories.length; c++) {
+			if(terminal[c]) {
+				if(categories[c].getClass() == Category.class
+						&& categories[c].name != null) {
+					index(literals, categories[c].name, c);
+					index(foldedLiterals, fold(categories[c].name), c);
+				}
+				else if(categories[c].getClass() == CategorySet.class
+						&& !((CategorySet)categories[c]).negated) {
+					for(String token : ((CategorySet)categories[c]).members) {
+						if(token != null) {
+							index(literals, token, c);
+							index(foldedLiterals, fold(token), c);
+						}
+					}
+				}
+				else {
+					tested[patternCount++] = c;
+				}
+			}
+		}
+		patterns = Arrays.copyOf(tested, patternCount);
+
+		nullable = new boolean[categories.length];
+		nullableRule = new int[categories.length];
+		findNullable();
+
+		predictionClosure = new int[categories.length][];
+		findPredictionClosures();
+
+		first = new BitSet[categories.length];
+		findFirstSets();
+	}
+
+	/**
+	 * Finds the nullable categories in time linear in the size of the
+	 * grammar. Each rule counts the categories on its right side not yet
+	 * known to be nullable; when the count of a rule drops to zero, its left
+	 * side is nullable and every rule using that category is updated in
+	 * turn.
+	 */
+	private void findNullable() {
+		int[] pending = new int[rules.length];
+		int[] useCounts = new int[categories.length];
+		for(int r = 0; r < rules.length; r++) {
+			pending[r] = right[r].length;
+			for(int c : right[r]) {
+				useCounts[c]++;
+			}
+		}
+
+		int[][] uses = new int[categories.length][];
+		for(int c = 0; c < categories.length; c++) {
+			uses[c] = new int[useCounts[c]];
+			useCounts[c] = 0;
+		}
+		for(int r = 0; r < rules.length; r++) {
+			for(int c : right[r]) {
+				uses[c][useCounts[c]++] = r;
+			}
+		}
+
+		int[] queue = new int[rules.length]; // each rule enters at most once
+		int head = 0, tail = 0;
+		for(int r = 0; r < rules.length; r++) {
+			if(pending[r] == 0) {
+				queue[tail++] = r;
+			}
+		}
+
+		while(head < tail) {
+			int r = queue[head++];
+			int l = left[r];
+			if(!nullable[l]) {
+				nullable[l] = true;
+				nullableRule[l] = r;
+				for(int u : uses[l]) {
+					if(--pending[u] == 0) {
+						queue[tail++] = u;
+					}
+				}
+			}
+		}
+	}
+
+	private static void index(Map<String, int[]> map, String key, int id) {
+		int[] ids = map.get(key);
+		if(ids == null) {
+			ids = new int[] {id};
+		}
+		else if(ids[ids.length - 1] == id) { // tokens of a set that fold alike
+			return;
+		}
+		else {
+			ids = Arrays.copyOf(ids, ids.length + 1);
+			ids[ids.length - 1] = id;
+		}
+
+		map.put(key, ids);
+	}
+
+	/**
+	 * Folds the case of a string so that strings that are
+	 * {@link String#equalsIgnoreCase(String) equal ignoring case} fold to
+	 * the same string.
+	 */
+	static String fold(String s) {
+		StringBuilder sb = new StringBuilder(s.length());
+		for(int i = 0; i < s.length(); ) {
+			int cp = s.codePointAt(i);
+			sb.appendCodePoint(Character.toLowerCase(Character.toUpperCase(cp)));
+			i += Character.charCount(cp);
+		}
+
+		return sb.toString();
+	}
+
+	private void intern(Category category, List<Category> cats) {
+		if(!categoryIds.containsKey(category)) {
+			categoryIds.put(category, cats.size());
+			cats.add(category);
+		}
+	}
+
+	/**
+	 * Gets the grammar this compiled grammar was created from.
+	 * @return The grammar specified at compilation.
+	 */
+	public Grammar getGrammar() {
+		return grammar;
+	}
+
+	/**
+	 * Counts the categories in this compiled grammar, including
+	 * {@link Category#START}.
+	 * @return The number of category identifiers assigned.
+	 */
+	public int countCategories() {
+		return categories.length;
+	}
+
+	/**
+	 * Gets the category with the specified identifier.
+	 * @param id The category identifier.
+	 * @return The category.
+	 * @throws IndexOutOfBoundsException If <code>id</code> is not a valid
+	 * category identifier.
+	 */
+	public Category getCategory(int id) {
+		return categories[id];
+	}
+
+	/**
+	 * Gets the identifier assigned to the specified category.
+	 * @param category The category to look up.
+	 * @return The category's identifier, or <code>-1</code> if the category
+	 * does not occur in this grammar.
+	 */
+	public int getCategoryId(Category category) {
+		Integer id = categoryIds.get(category);
+		return (id == null) ? -1 : id.intValue();
+	}
+
+	/**
+	 * Finds, for every non-terminal, the categories whose rules are
+	 * predicted along with its own: the categories that can begin one of its
+	 * rules, possibly after nullable categories, and so on transitively.
+	 * Each closure starts with the non-terminal itself.
+	 */
+	private void findPredictionClosures() {
+		int[] seen = new int[categories.length];
+		Arrays.fill(seen, -1);
+		int[] closure = new int[categories.length];
+
+		for(int c = 0; c < categories.length; c++) {
+			if(terminal[c]) {
+				predictionClosure[c] = new int[0];
+				continue;
+			}
+
+			int size = 0;
+			closure[size++] = c;
+			seen[c] = c;
+			for(int i = 0; i < size; i++) { // closure is its own work list
+				for(int r : rulesByLeft[closure[i]]) {
+					for(int next : right[r]) {
+						if(!terminal[next] && seen[next] != c) {
+							seen[next] = c;
+							closure[size++] = next;
+						}
+						if(!nullable[next]) {
+							break;
+						}
+					}
+				}
+			}
+
+			predictionClosure[c] = Arrays.copyOf(closure, size);
+		}
+	}
+
+	/**
+	 * Finds the terminals that can begin a string derived from each
+	 * category, by propagating them through the rules until nothing changes.
+	 * A terminal's own FIRST set contains just itself.
+	 */
+	private void findFirstSets() {
+		for(int c = 0; c < categories.length; c++) {
+			first[c] = new BitSet();
+			if(terminal[c]) {
+				first[c].set(c);
+			}
+		}
+
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for(int r = 0; r < rules.length; r++) {
+				BitSet f = first[left[r]];
+				for(int c : right[r]) {
+					if(c != left[r]) {
+						int before = f.cardinality();
+						f.or(first[c]);
+						changed |= (f.cardinality() != before);
+					}
+					if(!nullable[c]) {
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the terminals that match a token. Literal terminals are looked
+	 * up by name; only terminals like {@link CategorySet category sets} that
+	 * match more than one token are tested.
+	 * @param token The token.
+	 * @param ignoreCase Whether terminals match tokens regardless of case.
+	 * @return The identifiers of the matching terminals, in increasing order.
+	 */
+	int[] matching(String token, boolean ignoreCase) {
+		return matching(token, -1, ignoreCase);
+	}
+
+	/**
+	 * Finds the terminals that match a single code point, as a token of one
+	 * character. Terminals other than literals are tested with
+	 * {@link Category#matches(int, boolean)}.
+	 * @param codePoint The code point.
+	 * @param ignoreCase Whether terminals match tokens regardless of case.
+	 * @return The identifiers of the matching terminals, in increasing order.
+	 * @see #matching(String, boolean)
+	 */
+	int[] matching(int codePoint, boolean ignoreCase) {
+		return matching(new String(Character.toChars(codePoint)), codePoint,
+			ignoreCase);
+	}
+
+	private int[] matching(String token, int codePoint, boolean ignoreCase) {
+		int[] found = (token == null) ? null
+			: (ignoreCase ? foldedLiterals.get(fold(token))
+				: literals.get(token));
+		int count = 0;
+		int[] ids = new int[patterns.length
+			+ ((found == null) ? 0 : found.length)];
+		if(found != null) {
+			for(int c : found) { // folding may be coarser than the JDK's
+				if(!ignoreCase || categories[c].matches(token, true)) {
+					ids[count++] = c;
+				}
+			}
+		}
+		int literalCount = count;
+
+		if(token != null) {
+			for(int c : patterns) {
+				if((codePoint < 0) ? categories[c].matches(token, ignoreCase)
+						: categories[c].matches(codePoint, ignoreCase)) {
+					ids[count++] = c;
+				}
+			}
+		}
+
+		if(literalCount > 0 && count > literalCount) {
+			Arrays.sort(ids, 0, count);
+		}
+
+		return (count == ids.length) ? ids : Arrays.copyOf(ids, count);
+	}
+
+	/**
+	 * Finds the terminals that match a token.
+	 * @param token The next token in the input, or <code>null</code> at the
+	 * end of the input.
+	 * @param ignoreCase Whether terminals match tokens regardless of case.
+	 * @return The identifiers of the matching terminals.
+	 * @see #matching(String, boolean)
+	 */
+	BitSet lookahead(String token, boolean ignoreCase) {
+		return lookahead(matching(token, ignoreCase));
+	}
+
+	/**
+	 * Collects terminal identifiers into a set, for use as lookahead.
+	 * @param terminals The identifiers of the terminals the next token
+	 * matches.
+	 * @see #canBegin(int, BitSet)
+	 */
+	BitSet lookahead(int[] terminals) {
+		BitSet expected = new BitSet();
+		for(int t : terminals) {
+			expected.set(t);
+		}
+
+		return expected;
+	}
+
+	/**
+	 * Tests whether a rule's right side can begin with one of the specified
+	 * terminals, or derive the empty string.
+	 * @param rule The rule identifier.
+	 * @param lookahead The terminals matching the next token.
+	 * @see #lookahead(String, boolean)
+	 */
+	boolean canBegin(int rule, BitSet lookahead) {
+		for(int c : right[rule]) {
+			if(first[c].intersects(lookahead)) {
+				return true;
+			}
+			if(!nullable[c]) {
+				return false;
+			}
+		}
+
+		return true; // the whole right side is nullable
+	}
+
+	/**
+	 * Gets the FIRST set of a category: the terminals that can begin a
+	 * string it derives.
+	 * @param category The category to get the FIRST set for.
+	 * @return The terminals in the category's FIRST set, or an empty set if
+	 * <code>category</code> does not occur in this grammar. The FIRST set of
+	 * a terminal contains just that terminal. Whether a category derives the
+	 * empty string is tested by {@link #isNullable(Category)}.
+	 */
+	public Set<Category> getFirstSet(Category category) {
+		Set<Category> fs = new LinkedHashSet<Category>();
+		int c = getCategoryId(category);
+		if(c >= 0) {
+			for(int t = first[c].nextSetBit(0); t >= 0;
+					t = first[c].nextSetBit(t + 1)) {
+				fs.add(categories[t]);
+			}
+		}
+
+		return fs;
+	}
+
+	/**
+	 * Tests whether a category can derive the empty string.
+	 * @param category The category to test.
+	 * @return <code>true</code> iff <code>category</code> occurs in this
+	 * grammar and is the left side of a rule whose right side is empty or
+	 * consists only of nullable categories.
+	 */
+	public boolean isNullable(Category category) {
+		int c = getCategoryId(category);
+		return (c >= 0 && nullable[c]);
+	}
+
+	/**
+	 * Counts the rules in this compiled grammar, including its start rules.
+	 * @return The number of rule identifiers assigned.
+	 */
+	public int countRules() {
+		return rules.length;
+	}
+
+	/**
+	 * Gets the rule with the specified identifier.
+	 * @param id The rule identifier.
+	 * @return The rule.
+	 * @throws IndexOutOfBoundsException If <code>id</code> is not a valid
+	 * rule identifier.
+	 */
+	public Rule getRule(int id) {
+		return rules[id];
+	}
+
+	/**
+	 * Gets the identifier assigned to the specified rule.
+	 * @param rule The rule to look up.
+	 * @return The rule's identifier, or <code>-1</code> if the rule does not
+	 * occur in this grammar. For a {@link DottedRule dotted rule}, the
+	 * identifier of its underlying rule is returned.
+	 */
+	public int getRuleId(Rule rule) {
+		if(rule instanceof DottedRule) { // equals() also compares position
+			rule = new Rule(rule.left, rule.right);
+		}
+		
+		Integer id = ruleIds.get(rule);
+		return (id == null) ? -1 : id.intValue();
+	}
+
+	/**
+	 * Gets the canonical dotted rule for a dotted rule identifier. Dotted
+	 * rules are immutable, so the same instance is shared by every edge that
+	 * needs it. They are all created when the grammar is compiled, so that
+	 * a compiled grammar is never changed by parsing with it.
+	 */
+	DottedRule dottedRule(int id) {
+		return dottedRules[id];
+	}
+
+	/**
+	 * Gets the dotted rule identifier for a dotted rule, or <code>-1</code>
+	 * if its underlying rule is not in this grammar. Canonical dotted rules
+	 * are recognized without hashing.
+	 */
+	int dottedId(DottedRule dr) {
+		int id = dr.id;
+		if(id >= 0 && id < dottedRules.length && dottedRules[id] == dr) {
+			return id;
+		}
+
+		int r = getRuleId(dr);
+		return (r < 0) ? -1 : dottedBase[r] + dr.position;
+	}
+
+	/**
+	 * Gets the start rule for the specified seed category.
+	 * @return The rule identifier of <code>START -&gt; seed</code>, or
+	 * <code>-1</code> if the seed does not occur in this grammar.
+	 */
+	int startRule(Category seed) {
+		int c = getCategoryId(seed);
+		return (c < 0) ? -1 : startRules[c];
+	}
+
+	/**
+	 * Gets a string representation of this compiled grammar.
+	 */
+	@Override
+	public String toString() {
+		return "[" + getClass().getSimpleName() + " " + grammar.name + ": "
+			+ categories.length + " categories, " + rules.length + " rules]";
+	}
+}
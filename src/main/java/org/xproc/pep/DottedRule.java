@@ -30,6 +30,7 @@ package org.xproc.pep;
 public class DottedRule extends Rule {
 	int position;
 	Category activeCategory;
+	int id = -1; // only set for dotted rules of a compiled grammar
 	
 	/**
 	 * Creates a new dotted rule for the given rule, with a dot position at
@@ -52,7 +53,16 @@ public class DottedRule extends Rule {
 	 * {@link Rule#getRight() right side sequence} in <code>rule</code>. 
 	 */
 	public DottedRule(Rule rule, int position) {
-		super(rule.left, rule.right);
+		this(rule, position, -1);
+	}
+	
+	/**
+	 * Creates a dotted rule with the specified identifier within a
+	 * {@link CompiledGrammar compiled grammar}.
+	 * @see CompiledGrammar#dottedRule(int)
+	 */
+	DottedRule(Rule rule, int position, int id) {
+		super(rule); // already checked
 		
 		if(position < 0 || position > right.length) {
 			throw new IndexOutOfBoundsException(
@@ -63,6 +73,7 @@ public class DottedRule extends Rule {
 		
 		// determine active category
 		activeCategory = (position < right.length) ? right[position] : null;
+		this.id = id;
 	}
 	
 	/**
@@ -137,7 +148,7 @@ public class DottedRule extends Rule {
 	 */
 	@Override
 	public boolean equals(Object obj) {
-		return (obj instanceof DottedRule && super.equals(obj)
+		return obj == this || (obj instanceof DottedRule && super.equals(obj)
 				&& position == ((DottedRule)obj).position);
 	}
 
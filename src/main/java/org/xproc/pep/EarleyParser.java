@@ -10,12 +10,13 @@
  */
 package org.xproc.pep;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.EnumMap;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 
 /**
@@ -55,12 +56,17 @@ import java.util.Set;
  * A parser instance can be configured using
  * {@link #setOption(ParserOption, Boolean)}. When no configuration is
  * done, a parser just uses the {@link ParserOption#getDefaultValue()
- * default values} of options. Note, however, that instances of this class are
- * not synchronized. If it is possible that a thread could be calling
- * both {@link #parse(Iterable, Category)} or
- * {@link #recognize(Iterable, Category)}
- * and another thread could be setting options, steps should be taken by the
- * developer to ensure that these do not happen concurrently.
+ * default values} of options.
+ * <p>
+ * Parsing never changes the state of a parser: everything a parse needs
+ * while it is underway is kept in its own {@link IncrementalParse}, and the
+ * grammar and options are read once, when it starts. A single parser can
+ * therefore be shared by any number of threads parsing at the same time,
+ * provided its grammar is not changed while they do, which is best ensured
+ * by giving it a {@link Grammar#freeze() frozen} grammar. Options can be
+ * set and the grammar replaced at any time; parses already underway are
+ * not affected. A listener is notified from every thread that parses, so
+ * a shared parser should only have one that is thread-safe.
  * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
  * @version $LastChangedRevision: 3115 $
  * @see Grammar
@@ -68,11 +74,10 @@ import java.util.Set;
  * @see ParserOption
  */
 public class EarleyParser {
-	Grammar grammar;
-	ParserListener listener;
-	Map<ParserOption, Boolean> options;
-	
-	private boolean predictPreterm, ignoreCase;
+	volatile Grammar grammar;
+	volatile ParserListener listener;
+	volatile ChartListener chartListener;
+	volatile Map<ParserOption, Boolean> options; // copied on write
 	
 	/**
 	 * Creates a new Earley parser for the specified grammar.
@@ -141,6 +146,27 @@ public class EarleyParser {
 	public void setListener(ParserListener listener) {
 		this.listener = listener;
 	}
+	
+	/**
+	 * Gets the listener currently receiving the items added to the chart.
+	 * @return <code>null</code> if no chart listener has been specified.
+	 * @see #setChartListener(ChartListener)
+	 */
+	public ChartListener getChartListener() {
+		return chartListener;
+	}
+	
+	/**
+	 * Sets the listener that will receive the items added to the chart,
+	 * without any event being created for them. A chart listener is notified
+	 * in addition to the {@link #getListener() listener}, of parses started
+	 * from now on.
+	 * @param chartListener A chart listener, possibly <code>null</code>.
+	 * @see ChartListener
+	 */
+	public void setChartListener(ChartListener chartListener) {
+		this.chartListener = chartListener;
+	}
 
 	/**
 	 * Tests whether this parser has a defined option identified by the
@@ -165,6 +191,15 @@ public class EarleyParser {
 	 * not been set.
 	 */
 	public Boolean getOption(ParserOption optionName) {
+		return getOption(options, optionName);
+	}
+	
+	/**
+	 * Gets the value of an option from a snapshot of a parser's options.
+	 * @see #getOption(ParserOption)
+	 */
+	static Boolean getOption(Map<ParserOption, Boolean> options,
+			ParserOption optionName) {
 		if(options == null) {
 			return optionName.defaultValue;
 		}
@@ -184,7 +219,8 @@ public class EarleyParser {
 	 * <code>optionName</code> is <code>null</code>.
 	 * @see EnumMap#put(Enum, Object)
 	 */
-	public Boolean setOption(ParserOption optionName, Boolean value) {
+	public synchronized Boolean setOption(ParserOption optionName,
+			Boolean value) {
 		if(optionName == null) {
 			throw new IllegalArgumentException("null option name");
 		}
@@ -192,12 +228,12 @@ public class EarleyParser {
 			throw new IllegalArgumentException("null value");
 		}
 		
-		if(options == null) {
-			options = new EnumMap<ParserOption, Boolean>(
-					ParserOption.class);
-		}
-		
-		Boolean oldValue = options.put(optionName, value);
+		// parses in other threads keep reading the map they started with
+		Map<ParserOption, Boolean> copy = (options == null)
+			? new EnumMap<ParserOption, Boolean>(ParserOption.class)
+			: new EnumMap<ParserOption, Boolean>(options);
+		Boolean oldValue = copy.put(optionName, value);
+		options = copy;
 		
 		if(oldValue == null) {
 			oldValue = optionName.defaultValue;
@@ -243,6 +279,15 @@ public class EarleyParser {
 	/**
 	 * Tests whether this parser recognizes a given string (list of tokens)
 	 * for the specified seed category.
+	 * <p>
+	 * Unless a {@link ParserListener listener} has been specified that
+	 * {@link ParserListener#getEventTypes() wants} to be notified of edges or
+	 * of the completed parse, no derivations are recorded and no chart is
+	 * kept. Tokens are read one at a time, and Earley sets are
+	 * discarded as soon as no item that can still be advanced began in them,
+	 * so for grammars without deep nesting, recognizing a string takes
+	 * about the same memory however long the string is. Reading stops as
+	 * soon as the tokens read can no longer begin a string of the grammar.
 	 * @param tokens The tokens to parse.
 	 * @param seed The seed category to attempt to recognize for the given
 	 * <code>tokens</code>.
@@ -255,7 +300,27 @@ public class EarleyParser {
 	 */
 	public Status recognize(Iterable<String> tokens, Category seed) 
 			throws PepException {
-		return parse(tokens, seed).getStatus();
+		IncrementalParse session = new IncrementalParse(this, seed, true);
+		if(!session.recognizing) { // the listener wants to see the chart
+			return parse(session, tokens).getStatus();
+		}
+		
+		if(session.getSeed() != null) {
+			if(tokens == null || !tokens.iterator().hasNext()) {
+				session.fireParseError(0, "null or empty tokens");
+			}
+			else {
+				for(String token : tokens) {
+					if(!session.offer(token)) { // no need to read further
+						break;
+					}
+				}
+			}
+		}
+		
+		session.finish();
+		return session.parse.error ? Status.ERROR
+			: session.isAccepting() ? Status.ACCEPT : Status.REJECT;
 	}
 	
 	/**
@@ -321,142 +386,347 @@ public class EarleyParser {
 	 */
 	public Parse parse(Iterable<String> tokens, Category seed) 
 			throws PepException {
-		Chart chart = new Chart();
-		Integer index = new Integer(0);
+		return parse(new IncrementalParse(this, seed), tokens);
+	}
+	
+	/**
+	 * Offers every token to a newly started parse, and finishes it.
+	 */
+	private Parse parse(IncrementalParse session, Iterable<String> tokens)
+			throws PepException {
+		if(session.getSeed() != null) {
+			if(tokens == null || !tokens.iterator().hasNext()) {
+				session.fireParseError(0, "null or empty tokens");
+			}
+			else {
+				for(String token : tokens) {
+					session.offer(token);
+				}
+			}
+		}
 		
-		Parse parse = new Parse(seed, chart);
+		return session.finish(); // notifies listener
+	}
+	
+	/**
+	 * Gets a parse for a string of characters, each of which is a token. This
+	 * is how grammars whose terminals are {@link CategoryCharacterSet
+	 * character sets} are meant to be used.
+	 * <p>
+	 * The input is read one Unicode code point at a time, so a supplementary
+	 * character is a single token even though it takes two <code>char</code>s.
+	 * Characters are scanned as code points, and
+	 * {@link Category#matches(int, boolean) matched} as such, without
+	 * creating a string for each one; the {@link Parse#getTokens() tokens}
+	 * of the parse are kept as code points too. Unlike
+	 * {@link #parse(String, Category)}, which splits its input into tokens
+	 * at spaces, this method treats spaces as characters like any other,
+	 * and an empty input is parsed as the empty string.
+	 * @param input The characters to parse.
+	 * @param seed The seed category to attempt to find for the characters.
+	 * @return A parse for the specified <code>input</code> and
+	 * <code>seed</code>.
+	 * @throws PepException In the same cases as
+	 * {@link #parse(Iterable, Category)}, except that an empty input is not
+	 * an error.
+	 * @see IncrementalParse#offer(int)
+	 */
+	public Parse parseCharacters(CharSequence input, Category seed)
+			throws PepException {
+		IncrementalParse session = new IncrementalParse(this, seed);
 		
-		if(seed == null) {
-			fireParseError(parse, index, "invalid seed category: " + seed);
-		}
-		else if(tokens == null || !tokens.iterator().hasNext()) {
-			fireParseError(parse, index, "null or empty tokens");
-		}
-		else {
-			// get and cache boolean values
-			predictPreterm = getOption(ParserOption.PREDICT_FOR_PRETERMINALS);
-			ignoreCase = getOption(ParserOption.IGNORE_TERMINAL_CASE);
-			
-			if(!predictPreterm) {
-				// check for rules that don't work if not predicting preterms
-				for(Rule r : grammar.getAllRules()) {
-					if(r.isPreterminal() && r.right.length > 1) {
-						predictPreterm = true;
-						fireParseMessage(parse, "setting "
-							+ ParserOption.PREDICT_FOR_PRETERMINALS.name() + " to true;"
-							+ " grammar contains incompatible rule: " + r);
-						break;
-					}
+		if(seed != null) {
+			if(input == null) {
+				session.fireParseError(0, "null input");
+			}
+			else {
+				for(int i = 0; i < input.length(); ) {
+					int cp = Character.codePointAt(input, i);
+					session.offer(cp);
+					i += Character.charCount(cp);
 				}
 			}
-			
-			Iterator<String> tokenIterator = tokens.iterator();
-			
-			Edge seedEdge = new Edge(DottedRule.startRule(seed), index);
-			chart.addEdge(index, seedEdge); // seed parser
-			fireParserSeeded(index, seedEdge); // notify listeners
-			while(tokenIterator.hasNext()) {
-				try {
-					predict(chart, index); // make predictions at this index
+		}
+		
+		return session.finish(); // notifies listener
+	}
+	
+	/**
+	 * Gets a parse for the characters read from a reader, each of which is a
+	 * token. The reader is read to its end, but not closed.
+	 * @param input The reader to read the characters to parse from.
+	 * @param seed The seed category to attempt to find for the characters.
+	 * @return A parse for the characters read and <code>seed</code>.
+	 * @throws PepException In the same cases as
+	 * {@link #parseCharacters(CharSequence, Category)}.
+	 * @throws IOException If reading from <code>input</code> fails.
+	 * @see #parseCharacters(CharSequence, Category)
+	 */
+	public Parse parseCharacters(Reader input, Category seed)
+			throws PepException, IOException {
+		IncrementalParse session = new IncrementalParse(this, seed);
+		
+		if(seed != null) {
+			if(input == null) {
+				session.fireParseError(0, "null input");
+			}
+			else {
+				char[] buffer = new char[8192];
+				char high = 0; // pending high surrogate, from the last read
+				for(int n = input.read(buffer); n >= 0; n = input.read(buffer)) {
+					for(int i = 0; i < n; i++) {
+						char c = buffer[i];
+						if(high != 0) {
+							if(Character.isLowSurrogate(c)) {
+								session.offer(Character.toCodePoint(high, c));
+								high = 0;
+								continue;
+							}
+							session.offer(high); // unpaired, a character of its own
+							high = 0;
+						}
 						
-					String token = tokenIterator.next(); // get next token
-					parse.tokens.add(token); // add to tokens in parse
-					fireTokenConsumed(token);
-					
-					scan(chart, index++, token); // scan and increment index
-					complete(chart, index); // complete for next index
-									
-					// finish filling chart by predicting for final index
-					predict(chart, index);
+						if(Character.isHighSurrogate(c)) {
+							high = c;
+						}
+						else {
+							session.offer(c);
+						}
+					}
 				}
-				catch(PepException pe) {
-					fireParseError(parse, index, pe); // may re-throw exception
+				
+				if(high != 0) {
+					session.offer(high);
 				}
 			}
 		}
 		
-		fireParseComplete(parse); // notify listener		
-		return parse; // return completed parse
+		return session.finish(); // notifies listener
 	}
 	
 	/**
-	 * Makes predictions in the specified chart at the given index.
-	 * @param chart The chart to fill with predictions at <code>index</code>.
-	 * @param index The string index to make predictions at.
+	 * Parses a string again after an edit, reusing as much as possible of a
+	 * previous parse. The new string consists of the tokens of
+	 * <code>previous</code> before <code>editStart</code>, followed by the
+	 * <code>replacement</code> tokens.
+	 * <p>
+	 * The Earley sets for the tokens before the edit are taken from
+	 * <code>previous</code> as they are, and parsing resumes from there. If
+	 * the replacement ends with the same tokens as the string of
+	 * <code>previous</code>, the sets for those tokens are compared with the
+	 * previous ones as they are recomputed. As soon as the items that can
+	 * still be advanced no longer depend on anything between the edit and
+	 * the current index, the remaining sets would come out the same as
+	 * before, and they are taken from <code>previous</code> instead of
+	 * being computed. If the edit replaced as many tokens as it removed,
+	 * those sets are shared with <code>previous</code>, so an edit to a long
+	 * string whose effect stays local costs about as much as parsing the
+	 * tokens around it. Otherwise they are copied with their string indexes
+	 * moved, which is still much cheaper than parsing them.
+	 * <p>
+	 * Nothing is reused if <code>previous</code> was not produced by this
+	 * parser with its current grammar and options. The
+	 * {@link ParserListener listener}, if any, is only notified of the work
+	 * that is actually done. Sets are shared with <code>previous</code>,
+	 * which should not be used from another thread while this method runs.
+	 * @param previous A parse produced by this parser.
+	 * @param editStart The index of the first token that changed.
+	 * @param replacement The tokens of the new string from
+	 * <code>editStart</code> on.
+	 * @return A parse for the edited string and the seed category of
+	 * <code>previous</code>.
+	 * @throws PepException In the same cases as
+	 * {@link #parse(Iterable, Category)}.
+	 * @throws IllegalArgumentException If <code>previous</code> or
+	 * <code>replacement</code> is <code>null</code>, or if
+	 * <code>editStart</code> is not between <code>0</code> and the number
+	 * of tokens of <code>previous</code>.
 	 */
-	void predict(Chart chart, Integer index) {
-		if(chart.containsEdges(index)) { // any edges at this index?
-			// avoid concurrently modifying chart by getting array
-			Set<Edge> edges = chart.getEdges(index);
-			LinkedList<Edge> predictStack = new LinkedList<Edge>();
-			for(Edge edge : edges.toArray(new Edge[edges.size()])) {
-				predictStack.push(edge);
-				
-				while(!predictStack.isEmpty()) {
-					Edge e = predictStack.pop();
-					Category active = e.dottedRule.activeCategory; // null if passive
-					
-					if(active != null && grammar.containsRules(active)) {
-						// get all rules with the active category on the left
-						for(Rule rule : grammar.getRules(active)) {
-							if(predictPreterm || !rule.isPreterminal()) {
-								// only predict for rules that aren't preterminals to avoid
-								// filling up the chart with entries for every terminal
-								
-								// make new edge at index with dotted rule at position 0
-								Edge newEdge = Edge.predictFor(rule, index);
-								// only predict for edges the chart did not already contain
-								if(chart.addEdge(index, newEdge)) {
-									fireEdgePredicted(index, newEdge); // notify listener
-									predictStack.push(newEdge);
-								}
-							}
-						}
+	public Parse reparse(Parse previous, int editStart,
+			List<String> replacement) throws PepException {
+		if(previous == null) {
+			throw new IllegalArgumentException("null previous parse");
+		}
+		if(replacement == null) {
+			throw new IllegalArgumentException("null replacement");
+		}
+		List<String> before = previous.tokens;
+		if(editStart < 0 || editStart > before.size()) {
+			throw new IllegalArgumentException("edit start out of range: "
+				+ editStart);
+		}
+		
+		IncrementalParse session = new IncrementalParse(this, previous.seed);
+		if(previous.seed == null) {
+			return session.finish();
+		}
+		
+		ItemChart old = session.resume(previous, editStart)
+			? previous.items : null;
+		for(int i = session.index; i < editStart; i++) {
+			session.offer(before.get(i)); // not taken from previous
+		}
+		
+		// the new string is aligned with the old one from here on
+		int length = editStart + replacement.size();
+		int shift = length - before.size(), aligned = length;
+		if(old != null) {
+			while(aligned > editStart && aligned - shift > editStart) {
+				String token = replacement.get(aligned - 1 - editStart);
+				if(token == null
+						|| !token.equals(before.get(aligned - 1 - shift))) {
+					break;
+				}
+				aligned--;
+			}
+		}
+		
+		int window = -1, low = 0; // sets that agree with previous so far
+		for(int i = 0; i < replacement.size(); i++) {
+			int k = session.index;
+			session.offer(replacement.get(i));
+			if(old != null && k >= aligned) {
+				int origin = session.align(old, editStart, shift,
+					aligned);
+				if(origin < 0) {
+					window = -1;
+				}
+				else {
+					low = (window < 0) ? origin : Math.min(low, origin);
+					if(window < 0) {
+						window = k;
+					}
+					if(low >= window) { // nothing left depends on the edit
+						session.adopt(old, editStart, shift,
+							replacement.subList(i + 1, replacement.size()));
+						break;
 					}
 				}
 			}
 		}
+		
+		return session.finish();
 	}
 	
 	/**
-	 * Handles a token scanned from the input string, making completions (and
-	 * adding edges to the chart) as needed.
-	 * @param chart The chart to fill.
-	 * @param index The start index of the scan.
-	 * @param token The token that was scanned.
-	 * @throws PepException If <code>token</code> is </code>null</code>.
+	 * Starts an {@link IncrementalParse incremental parse} for the specified
+	 * seed category, to be fed tokens one at a time as they become available.
+	 * The same {@link ParserListener listener} events are generated as for
+	 * {@link #parse(Iterable, Category)}, as the tokens are offered.
+	 * @param seed The seed category to attempt to find for the tokens.
+	 * @return A new incremental parse, seeded but with no tokens yet.
+	 * @throws PepException If <code>seed</code> is <code>null</code>, unless
+	 * this parser's listener decides not to re-throw.
+	 * @see IncrementalParse#offer(String)
 	 */
-	void scan(Chart chart, Integer index, String token) throws PepException {
-		if(token == null) {
-			throw new PepException("null token at index " + index);
+	public IncrementalParse startParse(Category seed) throws PepException {
+		return new IncrementalParse(this, seed);
+	}
+	
+	/**
+	 * Fills the Earley set at the given index in an item chart by making all
+	 * predictions and completions for it. Items are processed in the order
+	 * they were added to the set, so the set itself is the work list.
+	 * <p>
+	 * Following Aycock and Horspool, an item waiting for a
+	 * {@link CompiledGrammar#isNullable(Category) nullable} category is also
+	 * advanced over it right away, so completions of empty derivations never
+	 * have to be revisited as the set grows.
+	 * @param session The parse whose item chart is being filled.
+	 * @param index The index of the set to fill.
+	 * @param expected The terminals matching the next token, or
+	 * <code>null</code> to predict regardless of the next token.
+	 */
+	void close(IncrementalParse session, int index, BitSet expected) {
+		ItemChart items = session.items;
+		int[] predicted = session.predicted;
+		EarleySet set = items.peek(index);
+		if(set == null) { // nothing was scanned at this index
+			return;
 		}
 		
-		if(chart.containsEdges(index)) { // any predictions at this index?
-			Set<Edge> edges = chart.getEdges(index);
-			// just-in-time prediction
-			if(!predictPreterm) { // using array avoids comodification problems 
-				for(Edge edge : edges.toArray(new Edge[edges.size()])) {
-					if(!edge.isPassive()) {
-						Rule r = grammar.getSingletonPreterminal(
-							edge.dottedRule.activeCategory, token, ignoreCase);
-						if(r != null) {
-							Edge pt = Edge.predictFor(r, index);
-							if(chart.addEdge(index, pt)) {
-								fireEdgePredicted(index, pt);
-							}
+		CompiledGrammar cg = items.grammar;
+		boolean derive = !session.recognizing;
+		for(int item = 0; item < set.size; item++) { // set grows as we go
+			int dotted = set.dotted[item];
+			int next = cg.dottedNext[dotted];
+			
+			if(next < 0) { // passive, complete items waiting at its origin
+				int left = cg.left[cg.dottedRule[dotted]];
+				int pivot = set.origin[item];
+				if(pivot == index) { // empty, waiting items already stepped over it
+					continue;
+				}
+				if(session.memoize) { // Leo's transitive items
+					int[] top = items.transitive(pivot, left);
+					if(top[0] >= 0) { // only add the top of the reduction path
+						int completed = set.find(top[1], top[2]);
+						if(completed < 0) {
+							completed = set.add(top[1], top[2]);
 						}
+						if(derive) {
+							set.addDerivation(completed, top[3]);
+							set.defer(left, pivot); // items below added on demand
+						}
+						continue;
+					}
+				}
+				
+				EarleySet originSet = items.peek(pivot);
+				for(int waiting = originSet.firstWaiting(left); waiting >= 0;
+						waiting = originSet.nextWaiting[waiting]) {
+					int d = originSet.dotted[waiting];
+					int o = originSet.origin[waiting];
+					int completed = set.find(d + 1, o);
+					if(completed < 0) { // new item, otherwise just derivation
+						completed = set.add(d + 1, o);
+						if(derive) {
+							set.addDerivation(completed, pivot);
+						}
+						if(session.itemEvents) {
+							session.itemAdded(ParserEventType.EDGE_COMPLETED, index,
+								completed);
+						}
+					}
+					else if(derive) {
+						set.addDerivation(completed, pivot);
 					}
 				}
 			}
-
-			for(Edge edge : edges.toArray(new Edge[edges.size()])) {
-				// completions for active edges only
-				if(edge.canScan(token, ignoreCase)) {
-					Edge newEdge = Edge.scan(edge, token, ignoreCase);
-					Integer successor // save next index
-						= new Integer(index.intValue() + 1);
-					if(chart.addEdge(successor, newEdge)) {
-						fireEdgeScanned(successor, newEdge);
+			else if(!cg.terminal[next]) {
+				if(predicted[next] != index) { // predict the whole closure
+					long w = session.timing ? System.nanoTime() : 0L;
+					long u = session.cpuTime();
+					PhaseFlightEvent event
+						= PhaseFlightEvent.start(session.phaseEvents);
+					for(int c : cg.predictionClosure[next]) {
+						if(predicted[c] != index) {
+							predicted[c] = index; // only once per category
+							predict(session, set, index, c, expected);
+						}
+					}
+					if(session.timing) {
+						session.lap(ParseStatistics.Phase.PREDICT, w, u);
+					}
+					PhaseFlightEvent.finish(event, ParseStatistics.Phase.PREDICT,
+						index);
+				}
+				
+				if(cg.nullable[next]) { // Aycock and Horspool: step over it
+					int o = set.origin[item];
+					int advanced = set.find(dotted + 1, o);
+					if(advanced < 0) {
+						advanced = set.add(dotted + 1, o);
+						if(derive) {
+							set.addDerivation(advanced, index);
+						}
+						if(session.itemEvents) {
+							session.itemAdded(ParserEventType.EDGE_COMPLETED, index,
+								advanced);
+						}
+					}
+					else if(derive) {
+						set.addDerivation(advanced, index);
 					}
 				}
 			}
@@ -464,43 +734,100 @@ public class EarleyParser {
 	}
 	
 	/**
-	 * Makes completions in the specified chart at the given index.
-	 * @param chart The chart to fill.
-	 * @param index The index to make completions at.
+	 * Adds an item for each rule of a category to the Earley set at the
+	 * given index, leaving out those that cannot begin with the next token
+	 * if <code>expected</code> is given.
 	 */
-	void complete(Chart chart, Integer index) {
-		if(chart.containsEdges(index)) { // any edges at this index?
-			// avoid concurrently modifying chart by getting array
-			Set<Edge> edges = chart.getEdges(index);
-			LinkedList<Edge> completeStack = new LinkedList<Edge>();
-			for(Edge edge : edges.toArray(new Edge[edges.size()])) {
-				completeStack.push(edge);
-				
-				while(!completeStack.isEmpty()) {
-					Edge e = completeStack.pop();
-					Integer eo = new Integer(e.origin);
-					
-					// can only make completions based on passive edges
-					if(e.isPassive() && chart.containsEdges(eo)) {
-						// get all edges at this edge's origin
-						for(Edge originEdge : chart.getEdges(eo)) {
-							// compare each non-passive edge's active category with
-							// the left side of the edge used to complete
-							if(e.canComplete(originEdge)) {
-								// add new edge with dot advanced by one if same
-								Edge newEdge = Edge.complete(originEdge, e);
-								if(chart.addEdge(index, newEdge)) {
-									// only notify and recursively complete
-									// if the chart did not already contain this edge
-									fireEdgeCompleted(index, newEdge);									
-									completeStack.push(newEdge);
-								}
-							}
+	private void predict(IncrementalParse session, EarleySet set, int index,
+			int category, BitSet expected) {
+		ItemChart items = session.items;
+		CompiledGrammar cg = items.grammar;
+		for(int rule : cg.rulesByLeft[category]) {
+			if((session.predictPreterm || !cg.preterminal[rule])
+					&& (expected == null || cg.canBegin(rule, expected))) {
+				int d = cg.dottedBase[rule];
+				if(set.find(d, index) < 0) {
+					int predictedItem = set.add(d, index);
+					if(session.itemEvents) {
+						session.itemAdded(ParserEventType.EDGE_PREDICTED, index,
+							predictedItem);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Scans a token from the Earley set at the given index of a parse's item
+	 * chart, adding the resulting items to the set at the next index. Only the items
+	 * waiting for one of the terminals the token matches are visited.
+	 * @param terminals The identifiers of the terminals the token matches,
+	 * in increasing order, or <code>null</code> if the token is
+	 * <code>null</code>.
+	 * @throws PepException If <code>terminals</code> is </code>null</code>.
+	 * @see CompiledGrammar#matching(String, boolean)
+	 */
+	void scan(IncrementalParse session, int index, int[] terminals)
+			throws PepException {
+		if(terminals == null) {
+			throw new PepException("null token at index " + index);
+		}
+		
+		ItemChart items = session.items;
+		EarleySet set = items.peek(index);
+		if(set == null) { // string already rejected
+			return;
+		}
+		
+		CompiledGrammar cg = items.grammar;
+		if(!session.predictPreterm) { // just-in-time prediction
+			for(int t : terminals) {
+				for(int rule : cg.preterminalsByTerminal[t]) {
+					int d = cg.dottedBase[rule];
+					if(set.firstWaiting(cg.left[rule]) >= 0
+							&& set.find(d, index) < 0) {
+						int pt = set.add(d, index);
+						if(session.itemEvents) {
+							session.itemAdded(ParserEventType.EDGE_PREDICTED, index,
+								pt);
 						}
 					}
 				}
 			}
 		}
+		
+		// only the items waiting for a matching terminal, in set order
+		int[] scanning = new int[8];
+		int count = 0;
+		for(int t : terminals) {
+			for(int item = set.firstWaiting(t); item >= 0;
+					item = set.nextWaiting[item]) {
+				if(count == scanning.length) {
+					scanning = Arrays.copyOf(scanning, count << 1);
+				}
+				scanning[count++] = item;
+			}
+		}
+		if(terminals.length > 1) {
+			Arrays.sort(scanning, 0, count);
+		}
+		
+		EarleySet successor = null; // only created if something scans
+		for(int i = 0; i < count; i++) {
+			int item = scanning[i];
+			if(successor == null) {
+				successor = items.set(index + 1);
+			}
+			// each item scans at most once per token, so always new
+			int scanned = successor.add(set.dotted[item] + 1, set.origin[item]);
+			if(!session.recognizing) {
+				successor.addDerivation(scanned, index);
+			}
+			if(session.itemEvents) {
+				session.itemAdded(ParserEventType.EDGE_SCANNED, index + 1,
+					scanned);
+			}
+		}
 	}
 	
 	/**
@@ -513,66 +840,18 @@ public class EarleyParser {
 	}
 
 	private void fireOptionSet(ParserOption option, Boolean value) {
-		if(listener != null) {
+		if(notifies(ParserEventType.OPTION_SET)) {
 			listener.optionSet(
 					new ParserOptionEvent(this, option, value));
 		}
 	}
 	
-	private void fireParserSeeded(Integer index, Edge edge) {
-		if(listener != null) {
-			listener.parserSeeded(new EdgeEvent(this, index, edge));
-		}
-	}
-	
-	private void fireEdgePredicted(Integer index, Edge edge) {
-		if(listener != null) {
-			listener.edgePredicted(new EdgeEvent(this, index, edge));
-		}
-	}
-	
-	private void fireEdgeScanned(Integer index, Edge edge) {
-		if(listener != null) {
-			listener.edgeScanned(new EdgeEvent(this, index, edge));
-		}
-	}
-
-	private void fireTokenConsumed(String token) {
-		if (listener != null) {
-			listener.tokenConsumed(token);
-		}
-	}
-
-	private void fireEdgeCompleted(Integer index, Edge edge) {
-		if(listener != null) {
-			listener.edgeCompleted(new EdgeEvent(this, index, edge));
-		}
-	}
-	
-	private void fireParseComplete(Parse parse) {
-		if(listener != null) {
-			listener.parseComplete(new ParseEvent(this, parse));
-		}
-	}
-	
-	private void fireParseMessage(Parse parse, String message) {
-		if(listener != null) {
-			listener.parseMessage(new ParseEvent(this, parse), message);
-		}
-	}
-	
-	private void fireParseError(Parse parse, Integer index, String message)
-			throws PepException {
-		fireParseError(parse, index, new PepException(message));
-	}
-	
-	private void fireParseError(Parse parse, Integer index, PepException cause)
-			throws PepException {
-		parse.error = true;
-		if(listener == null) {
-			throw cause; // re-throw if no listener
-		}
-		
-		listener.parseError(new ParseErrorEvent(this, index, parse, cause));
+	/**
+	 * Tests whether this parser's listener is to be notified of events of
+	 * the specified type, outside of a parse.
+	 */
+	private boolean notifies(ParserEventType type) {
+		ParserListener l = listener;
+		return (l != null && l.getEventTypes().contains(type));
 	}
 }
@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.util.Arrays;
+import java.util.Map;
+
+
+/**
+ * The Earley items at a single string index of an {@link ItemChart item
+ * chart}.
+ * <p>
+ * Items are kept in parallel arrays in the order they were added, so an
+ * Earley set doubles as the parser's work list for its index. Each item is
+ * identified by the {@link CompiledGrammar compiled} dotted rule identifier
+ * and origin position, packed into a single <code>long</code> key that is
+ * looked up in an open-addressing hash table, so an item is only ever
+ * added once no matter how many ways it can be derived.
+ * <p>
+ * The derivations of an item are recorded as the distinct <em>pivots</em> it
+ * was reached through: the index of the Earley set where the category just
+ * before its dot begins. From a pivot, both the item it was advanced from
+ * and the sub-derivation it was advanced over can be found, so the pivots
+ * are the packed nodes of a {@link ParseForest shared packed parse forest}.
+ * {@link Edge Edges} are only created when they are asked for, by the
+ * {@link ItemChart item chart} the set belongs to.
+ * <p>
+ * Active items are also indexed by the category after their dot, so that
+ * completing a category at this set's index only visits the items
+ * {@link #firstWaiting(int) waiting} for it, in the order they were added.
+ * <p>
+ * When the parser memoizes right recursion, completions along a
+ * deterministic reduction path are not carried out while parsing. They are
+ * {@link #defer(int, int) deferred} instead, and the
+ * {@link ItemChart#get(int) item chart} adds the items they would have
+ * produced the first time the set is read.
+ * @see ItemChart
+ */
+final class EarleySet {
+	static final long EMPTY = -1L;
+
+	final int[] dottedNext; // of the compiled grammar
+
+	int size;
+	int[] dotted, origin;
+	int[] nextWaiting; // next item waiting for the same category, or -1
+	int[] derivation; // first of the item's pivots in the pool, or -1
+
+	int[] pivot, link; // pool of pivots, linked per item
+	int pooled;
+
+	Map<Integer, int[]> transitive; // Leo items by category, see ItemChart
+	int[] deferred; // category and origin of each deferred completion
+	int deferrals, expanded;
+
+	private long[] keys;
+	private int[] items;
+	private int mask;
+
+	private int[] waitKeys, waitFirst, waitLast; // by category, -1 if empty
+	private int waitCount, waitMask;
+
+	/**
+	 * Creates a new, empty Earley set.
+	 * @param dottedNext For every compiled dotted rule identifier, the
+	 * category after its dot, or <code>-1</code> if it is passive.
+	 * @see CompiledGrammar
+	 */
+	EarleySet(int[] dottedNext) {
+		this.dottedNext = dottedNext;
+
+		dotted = new int[8];
+		origin = new int[8];
+		nextWaiting = new int[8];
+		derivation = new int[8];
+
+		pivot = new int[8];
+		link = new int[8];
+
+		keys = new long[16];
+		items = new int[16];
+		mask = keys.length - 1;
+		Arrays.fill(keys, EMPTY);
+
+		waitKeys = new int[8];
+		waitFirst = new int[8];
+		waitLast = new int[8];
+		waitMask = waitKeys.length - 1;
+		Arrays.fill(waitKeys, -1);
+	}
+
+	/**
+	 * Packs a dotted rule identifier and origin into an item key.
+	 */
+	static long key(int dotted, int origin) {
+		return ((long)dotted << 32) | (origin & 0xffffffffL);
+	}
+
+	private static int hash(long key) {
+		int h = (int)(key ^ (key >>> 32)) * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+
+	private int slot(long key) {
+		int s = hash(key) & mask;
+		while(keys[s] != EMPTY && keys[s] != key) {
+			s = (s + 1) & mask;
+		}
+
+		return s;
+	}
+
+	/**
+	 * Finds the item in this set with the specified dotted rule and origin.
+	 * @return The item's position in this set, or <code>-1</code> if this
+	 * set contains no such item.
+	 */
+	int find(int dotted, int origin) {
+		long key = key(dotted, origin);
+		int s = slot(key);
+		return (keys[s] == EMPTY) ? -1 : items[s];
+	}
+
+	private int waitSlot(int category) {
+		int h = category * 0x9e3779b9;
+		int s = (h ^ (h >>> 16)) & waitMask;
+		while(waitKeys[s] >= 0 && waitKeys[s] != category) {
+			s = (s + 1) & waitMask;
+		}
+
+		return s;
+	}
+
+	/**
+	 * Finds the first item in this set whose dot is before the specified
+	 * category. The others follow through {@link #nextWaiting}.
+	 * @return The item's position in this set, or <code>-1</code> if no item
+	 * is waiting for <code>category</code>.
+	 */
+	int firstWaiting(int category) {
+		int s = waitSlot(category);
+		return (waitKeys[s] < 0) ? -1 : waitFirst[s];
+	}
+
+	/**
+	 * Adds an item to this set. The item must not already be contained.
+	 * @param dotted The compiled dotted rule identifier of the item.
+	 * @param origin The origin of the item.
+	 * @return The new item's position in this set.
+	 * @see #find(int, int)
+	 */
+	int add(int dotted, int origin) {
+		if(size == this.dotted.length) {
+			int capacity = size << 1;
+			this.dotted = Arrays.copyOf(this.dotted, capacity);
+			this.origin = Arrays.copyOf(this.origin, capacity);
+			nextWaiting = Arrays.copyOf(nextWaiting, capacity);
+			derivation = Arrays.copyOf(derivation, capacity);
+		}
+
+		int item = size++;
+		this.dotted[item] = dotted;
+		this.origin[item] = origin;
+		nextWaiting[item] = -1;
+		derivation[item] = -1;
+
+		int next = dottedNext[dotted];
+		if(next >= 0) { // active, append to the items waiting for next
+			int w = waitSlot(next);
+			if(waitKeys[w] < 0) {
+				waitKeys[w] = next;
+				waitFirst[w] = item;
+				if(++waitCount > (waitKeys.length >> 1)) {
+					rehashWaiting();
+					w = waitSlot(next);
+				}
+			}
+			else {
+				nextWaiting[waitLast[w]] = item;
+			}
+			waitLast[w] = item;
+		}
+
+		long key = key(dotted, origin);
+		int s = slot(key);
+		keys[s] = key;
+		items[s] = item;
+		if(size > (keys.length >> 1)) {
+			rehash();
+		}
+
+		return item;
+	}
+
+	/**
+	 * Records a derivation of an item through the specified pivot, unless
+	 * one was already recorded. Derivations are kept in the order they were
+	 * recorded.
+	 * @return <code>true</code> iff the derivation is new.
+	 */
+	boolean addDerivation(int item, int pivot) {
+		int last = -1;
+		for(int d = derivation[item]; d >= 0; d = link[d]) {
+			if(this.pivot[d] == pivot) {
+				return false;
+			}
+
+			last = d;
+		}
+
+		if(pooled == this.pivot.length) {
+			this.pivot = Arrays.copyOf(this.pivot, pooled << 1);
+			link = Arrays.copyOf(link, pooled << 1);
+		}
+
+		int d = pooled++;
+		this.pivot[d] = pivot;
+		link[d] = -1;
+		if(last < 0) {
+			derivation[item] = d;
+		}
+		else {
+			link[last] = d;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Records that the completions of a category's items at an origin were
+	 * reduced to their topmost item along a deterministic reduction path.
+	 * @param category The identifier of the completed category.
+	 * @param origin The origin of the completed items.
+	 * @see ItemChart#transitive(int, int)
+	 */
+	void defer(int category, int origin) {
+		if(deferred == null) {
+			deferred = new int[8];
+		}
+		else if(deferrals << 1 == deferred.length) {
+			deferred = Arrays.copyOf(deferred, deferred.length << 1);
+		}
+
+		deferred[deferrals << 1] = category;
+		deferred[(deferrals << 1) + 1] = origin;
+		deferrals++;
+	}
+
+	/**
+	 * Counts the derivations recorded for an item.
+	 */
+	int countDerivations(int item) {
+		int count = 0;
+		for(int d = derivation[item]; d >= 0; d = link[d]) {
+			count++;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Copies this set for a chart whose string indexes from
+	 * <code>edit</code> on are moved by <code>shift</code>, moving the
+	 * origins, pivots and deferred completions of the items accordingly.
+	 * @see ItemChart#adopt(ItemChart, int, int, int)
+	 */
+	EarleySet shifted(int edit, int shift) {
+		EarleySet set = new EarleySet(dottedNext);
+		for(int item = 0; item < size; item++) {
+			int o = origin[item];
+			int copy = set.add(dotted[item], (o < edit) ? o : o + shift);
+			for(int d = derivation[item]; d >= 0; d = link[d]) {
+				int p = pivot[d];
+				set.addDerivation(copy, (p < edit) ? p : p + shift);
+			}
+		}
+
+		for(int i = 0; i < deferrals; i++) {
+			int o = deferred[(i << 1) + 1];
+			set.defer(deferred[i << 1], (o < edit) ? o : o + shift);
+		}
+		set.expanded = expanded;
+
+		return set;
+	}
+
+	private void rehashWaiting() {
+		int[] oldKeys = waitKeys, oldFirst = waitFirst, oldLast = waitLast;
+
+		waitKeys = new int[oldKeys.length << 1];
+		waitFirst = new int[waitKeys.length];
+		waitLast = new int[waitKeys.length];
+		waitMask = waitKeys.length - 1;
+		Arrays.fill(waitKeys, -1);
+
+		for(int s = 0; s < oldKeys.length; s++) {
+			if(oldKeys[s] >= 0) {
+				int n = waitSlot(oldKeys[s]);
+				waitKeys[n] = oldKeys[s];
+				waitFirst[n] = oldFirst[s];
+				waitLast[n] = oldLast[s];
+			}
+		}
+	}
+
+	private void rehash() {
+		long[] oldKeys = keys;
+		int[] oldHeads = items;
+
+		keys = new long[oldKeys.length << 1];
+		items = new int[keys.length];
+		mask = keys.length - 1;
+		Arrays.fill(keys, EMPTY);
+
+		for(int s = 0; s < oldKeys.length; s++) {
+			if(oldKeys[s] != EMPTY) {
+				int n = slot(oldKeys[s]);
+				keys[n] = oldKeys[s];
+				items[n] = oldHeads[s];
+			}
+		}
+	}
+}
@@ -11,7 +11,6 @@
 package org.xproc.pep;
 
 import java.util.Collections;
-import java.util.LinkedHashSet;
 import java.util.Set;
 
 
@@ -233,19 +232,12 @@ public class Edge {
 	}
 	
 	/**
-	 * Helper for scan and complete.
+	 * Helper for scan and complete. The new bases share the bases of
+	 * <code>edge</code> instead of copying them.
+	 * @see Bases
 	 */
 	static Set<Edge> addBasisEdge(Edge edge, Edge basis) {
-		Set<Edge> newBases;
-		if(edge.bases.isEmpty()) { 
-			newBases = Collections.singleton(basis); // less expensive
-		}
-		else {
-			newBases = new LinkedHashSet<Edge>(edge.bases);
-			newBases.add(basis);
-		}
-		
-		return newBases;
+		return Bases.add(edge.bases, basis, basis != edge);
 	}
 	
 	/**
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * A node in a {@link ParseForest shared packed parse forest}.
+ * <p>
+ * A <em>symbol node</em> stands for every derivation of a {@link Category}
+ * over a span of the input, from its {@link #getOrigin() origin} to its
+ * {@link #getIndex() index}. An <em>intermediate node</em> stands for every
+ * derivation of a prefix of a rule's right side over a span; it is identified
+ * by a {@link DottedRule dotted rule} whose dot follows the prefix.
+ * Intermediate nodes keep the forest binary, so that its size stays
+ * polynomial in the length of the input.
+ * <p>
+ * The alternative derivations of a node are its
+ * {@link #getPackedNodes() packed nodes}. A node with more than one packed
+ * node is {@link #isAmbiguous() ambiguous}. Terminal symbol nodes have no
+ * packed nodes.
+ * <p>
+ * Forest nodes are lightweight views of a parse's items and are created as
+ * they are requested; two forest nodes are {@link #equals(Object) equal}
+ * when they are for the same symbol or dotted rule over the same span of the
+ * same forest.
+ * @see ParseForest
+ * @see PackedNode
+ */
+public class ForestNode {
+	final ParseForest forest;
+	final int symbol, dotted; // exactly one is -1
+	final int origin, index;
+
+	/**
+	 * Creates a symbol node (if <code>dotted</code> is <code>-1</code>) or
+	 * an intermediate node (if <code>symbol</code> is <code>-1</code>).
+	 */
+	ForestNode(ParseForest forest, int symbol, int dotted, int origin,
+			int index) {
+		this.forest = forest;
+		this.symbol = symbol;
+		this.dotted = dotted;
+		this.origin = origin;
+		this.index = index;
+	}
+
+	/**
+	 * Tests whether this node is a symbol node.
+	 * @return <code>true</code> for a symbol node, <code>false</code> for an
+	 * intermediate node.
+	 */
+	public boolean isSymbol() {
+		return (symbol >= 0);
+	}
+
+	/**
+	 * Tests whether this node is the symbol node for a scanned token.
+	 * @return <code>true</code> iff this is a symbol node whose
+	 * {@link #getCategory() category} is a {@link Category#isTerminal()
+	 * terminal}.
+	 */
+	public boolean isTerminal() {
+		return isSymbol() && forest.grammar.terminal[symbol];
+	}
+
+	/**
+	 * Gets the category of this node.
+	 * @return For a symbol node, the category it derives. For an
+	 * intermediate node, the {@link Rule#getLeft() left side} of its dotted
+	 * rule.
+	 */
+	public Category getCategory() {
+		CompiledGrammar cg = forest.grammar;
+		return cg.categories[isSymbol() ? symbol
+			: cg.left[cg.dottedRule[dotted]]];
+	}
+
+	/**
+	 * Gets the dotted rule of an intermediate node.
+	 * @return The dotted rule whose right side prefix this node derives, or
+	 * <code>null</code> if this is a symbol node.
+	 */
+	public DottedRule getDottedRule() {
+		return isSymbol() ? null : forest.grammar.dottedRule(dotted);
+	}
+
+	/**
+	 * Gets the string index where the span of this node begins.
+	 * @return The origin position of this node.
+	 */
+	public int getOrigin() {
+		return origin;
+	}
+
+	/**
+	 * Gets the string index where the span of this node ends.
+	 * @return The end position of this node.
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Gets the alternative derivations of this node.
+	 * @return A list of this node's packed nodes, in the order the parser
+	 * found them. The list is empty for terminal nodes.
+	 */
+	public List<PackedNode> getPackedNodes() {
+		if(isTerminal()) {
+			return Collections.emptyList();
+		}
+
+		// deferred completions only ever add passive items
+		EarleySet set = isSymbol() ? forest.items.get(index)
+			: forest.items.peek(index);
+		if(set == null) {
+			return Collections.emptyList();
+		}
+
+		List<PackedNode> packed = new ArrayList<PackedNode>();
+		if(isSymbol()) {
+			CompiledGrammar cg = forest.grammar;
+			for(int item = 0; item < set.size; item++) {
+				int d = set.dotted[item];
+				if(set.origin[item] == origin && cg.dottedNext[d] < 0
+						&& cg.left[cg.dottedRule[d]] == symbol) {
+					addPackedNodes(set, item, packed);
+				}
+			}
+		}
+		else {
+			int item = set.find(dotted, origin);
+			if(item >= 0) {
+				addPackedNodes(set, item, packed);
+			}
+		}
+
+		return packed;
+	}
+
+	private void addPackedNodes(EarleySet set, int item,
+			List<PackedNode> packed) {
+		int d = set.dotted[item];
+		if(d == forest.grammar.dottedBase[forest.grammar.dottedRule[d]]) {
+			// nothing before the dot, derives the empty string
+			packed.add(new PackedNode(forest, d, origin, index, origin));
+		}
+		else {
+			for(int p = set.derivation[item]; p >= 0; p = set.link[p]) {
+				packed.add(new PackedNode(forest, d, origin, index,
+					set.pivot[p]));
+			}
+		}
+	}
+
+	/**
+	 * Tests whether this node has more than one derivation.
+	 * @return <code>true</code> iff this node has more than one
+	 * {@link #getPackedNodes() packed node}.
+	 */
+	public boolean isAmbiguous() {
+		return (getPackedNodes().size() > 1);
+	}
+
+	/**
+	 * Tests whether this node is equal to another by comparing their
+	 * forests, symbols or dotted rules, and spans.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if(obj instanceof ForestNode) {
+			ForestNode on = (ForestNode)obj;
+			return (forest == on.forest && symbol == on.symbol
+				&& dotted == on.dotted && origin == on.origin
+				&& index == on.index);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Computes a hash code for this node based on its symbol or dotted rule
+	 * and span.
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * (31 * (31 * symbol + dotted) + origin) + index;
+	}
+
+	/**
+	 * Gets a string representation of this node.
+	 * @return &quot;<code>NP[0,2]</code>&quot; for a symbol node for
+	 * <code>NP</code> spanning the first two tokens, or
+	 * &quot;<code>S -&gt; NP * VP[0,2]</code>&quot; for an intermediate
+	 * node.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(isSymbol()
+			? getCategory().toString() : getDottedRule().toString());
+		sb.append('[');
+		sb.append(origin);
+		sb.append(',');
+		sb.append(index);
+		sb.append(']');
+
+		return sb.toString();
+	}
+}
@@ -10,6 +10,7 @@
  */
 package org.xproc.pep;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -24,12 +25,20 @@ import java.util.Set;
  * {@link Rule#getLeft() left side category}. The rule sets contained for
  * any given {@link Category left category} are not guaranteed to be 
  * maintained in the order of insertion.
+ * <p>
+ * A grammar can be {@link #freeze() frozen}, giving a copy that can no
+ * longer be changed. A frozen grammar is compiled as it is frozen, so it can
+ * be shared by any number of threads parsing with it at the same time.
  * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
  * @version $LastChangedRevision: 1781 $
  */
 public class Grammar {
 	String name;
 	Map<Category, Set<Rule>> rules;
+	int modCount;
+	
+	private CompiledGrammar compiled;
+	private boolean frozen;
 	
 	/**
 	 * Creates a grammar with the given name, initializes its internal data
@@ -57,11 +66,16 @@ public class Grammar {
 	 * @return <code>true</code> iff this grammar did not already contain
 	 * the specified rule.
 	 * @throws NullPointerException If <code>rule</code> is <code>null</code>.
+	 * @throws UnsupportedOperationException If this grammar is
+	 * {@link #isFrozen() frozen}.
 	 */
 	public boolean addRule(Rule rule) {
 		if(rule == null) {
 			throw new NullPointerException("null rule");
 		}
+		if(frozen) {
+			throw new UnsupportedOperationException("frozen grammar: " + name);
+		}
 		
 		Set<Rule> r;
 		if(!rules.containsKey(rule.left)) { // already rules for rule.left?
@@ -72,7 +86,12 @@ public class Grammar {
 			r = rules.get(rule.left); // get the existing rule set
 		}
 		
-		return r.add(rule);
+		if(r.add(rule)) {
+			modCount++;
+			return true;
+		}
+		
+		return false;
 	}
 	
 	/**
@@ -96,6 +115,8 @@ public class Grammar {
 	 * <code>null</code> if no such rules are contained in this grammar. The
 	 * rule set returned by this method is <em>not</em> guaranteed to contain
 	 * the rules in the order in which they were {@link #addRule(Rule) added}.
+	 * If this grammar is {@link #isFrozen() frozen}, the set cannot be
+	 * modified.
 	 */
 	public Set<Rule> getRules(Category left) {
 		return rules.get(left);
@@ -115,6 +136,85 @@ public class Grammar {
 		return allRules;
 	}
 	
+	/**
+	 * Gets the compiled form of this grammar. The compiled grammar is cached
+	 * and only recompiled when rules have been {@link #addRule(Rule) added}
+	 * since it was last compiled.
+	 * @return A compiled grammar reflecting all of the rules currently in
+	 * this grammar.
+	 * @see CompiledGrammar#CompiledGrammar(Grammar)
+	 */
+	public CompiledGrammar compile() {
+		CompiledGrammar cg = compiled;
+		if(cg == null || cg.version != modCount) {
+			cg = new CompiledGrammar(this);
+			compiled = cg;
+		}
+		
+		return cg;
+	}
+	
+	/**
+	 * Gets a frozen copy of this grammar, which has the same name and rules
+	 * but cannot be changed. The copy is compiled right away, so parsing
+	 * with it never changes it, and any number of threads can parse with it
+	 * at the same time, even through the same {@link EarleyParser parser}.
+	 * Changing this grammar afterward has no effect on the copy.
+	 * @return A frozen copy of this grammar, or this grammar itself if it is
+	 * already frozen.
+	 * @see #isFrozen()
+	 */
+	public Grammar freeze() {
+		if(frozen) {
+			return this;
+		}
+		
+		Grammar copy = new Grammar(name);
+		for(Map.Entry<Category, Set<Rule>> e : rules.entrySet()) {
+			copy.rules.put(e.getKey(), Collections.unmodifiableSet(
+				new HashSet<Rule>(e.getValue())));
+		}
+		copy.modCount = modCount;
+		copy.compile();
+		copy.frozen = true;
+		
+		return copy;
+	}
+	
+	/**
+	 * Tests whether this grammar is frozen, so that no rules can be added.
+	 * @see #freeze()
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+	
+	/**
+	 * Tests whether a category can derive the empty string in this grammar.
+	 * The nullable categories are computed when the grammar is
+	 * {@link #compile() compiled}.
+	 * @param category The category to test.
+	 * @return <code>true</code> iff <code>category</code> has a rule whose
+	 * right side is empty or consists only of nullable categories.
+	 * @see Rule#isEmpty()
+	 */
+	public boolean isNullable(Category category) {
+		return compile().isNullable(category);
+	}
+	
+	/**
+	 * Gets the FIRST set of a category in this grammar, the terminals that
+	 * can begin a string the category derives. FIRST sets are computed when
+	 * the grammar is {@link #compile() compiled}.
+	 * @param category The category to get the FIRST set for.
+	 * @return The terminals that can begin <code>category</code>.
+	 * @see CompiledGrammar#getFirstSet(Category)
+	 * @see #isNullable(Category)
+	 */
+	public Set<Category> getFirstSet(Category category) {
+		return compile().getFirstSet(category);
+	}
+	
 	/**
 	 * Gets a singleton preterminal rule with the specified left category,
 	 * producing the given string token.
@@ -129,10 +229,14 @@ public class Grammar {
 	 */
 	Rule getSingletonPreterminal(Category left, String token,
 			boolean ignoreCase) {
-		if(rules.containsKey(left)) {
-			for(Rule r : rules.get(left)) {
-				if(r.isSingletonPreterminal() && r.right[0].matches(token, ignoreCase)) {
-					return r;
+		CompiledGrammar cg = compile();
+		int l = cg.getCategoryId(left);
+		if(l >= 0) { // look up by token rather than trying every rule
+			for(int t : cg.matching(token, ignoreCase)) {
+				for(int r : cg.preterminalsByTerminal[t]) {
+					if(cg.left[r] == l) {
+						return cg.rules[r];
+					}
 				}
 			}
 		}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.ValidatorHandler;
+
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+
+/**
+ * Loads {@link Grammar grammars} from XML files in the format described by
+ * <code>etc/grammar.xsd</code>, such as the sample grammars.
+ * <p>
+ * A grammar is read as a stream, with {@link XMLStreamReader StAX}, and
+ * each rule is added to the grammar as soon as its element ends, so
+ * loading a grammar takes memory for the grammar and one rule at a time,
+ * not for the whole document. If the grammar is
+ * {@link #isValidating() validated}, the same stream is fed to a
+ * validator as it is read, against the schema
+ * <code>META-INF/etc/grammar.xsd</code> on the class path. The schema is
+ * only compiled once, when it is first needed, and shared by every grammar
+ * parser; if it cannot be found, grammars are not validated.
+ * <p>
+ * A grammar parser has no state other than whether it validates, so one
+ * can load any number of grammars, from any number of threads at once.
+ */
+public class GrammarParser {
+	static final String SCHEMA = "META-INF/etc/grammar.xsd";
+
+	private static final XMLInputFactory INPUTS = XMLInputFactory.newInstance();
+
+	private static Schema schema; // compiled on first use
+	private static boolean schemaLoaded;
+
+	private final boolean validating;
+
+	/**
+	 * Creates a grammar parser that validates the grammars it loads.
+	 */
+	public GrammarParser() {
+		this(true);
+	}
+
+	/**
+	 * Creates a grammar parser.
+	 * @param validating Whether grammars are validated against the
+	 * schema as they are loaded.
+	 */
+	public GrammarParser(boolean validating) {
+		this.validating = validating;
+	}
+
+	/**
+	 * Tests whether this grammar parser validates the grammars it loads.
+	 * Even if it does, they are only validated if the schema can be found.
+	 * @see #getSchema()
+	 */
+	public boolean isValidating() {
+		return validating;
+	}
+
+	/**
+	 * Gets the schema grammars are validated against, compiling it if this
+	 * is the first time it is needed.
+	 * @return The schema, or <code>null</code> if
+	 * <code>META-INF/etc/grammar.xsd</code> is not on the class path.
+	 * @throws PepException If the schema cannot be compiled.
+	 */
+	public static synchronized Schema getSchema() throws PepException {
+		if(!schemaLoaded) {
+			InputStream in
+				= GrammarParser.class.getClassLoader().getResourceAsStream(SCHEMA);
+			if(in != null) {
+				try {
+					schema = SchemaFactory.newInstance(
+						XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(
+							new StreamSource(in));
+				}
+				catch(SAXException se) {
+					throw new PepException("problem loading grammar schema", se);
+				}
+				finally {
+					try {
+						in.close();
+					}
+					catch(IOException ignore) {
+						// nothing was written
+					}
+				}
+			}
+			schemaLoaded = true;
+		}
+
+		return schema;
+	}
+
+	/**
+	 * Loads a grammar from a file.
+	 * @throws PepException If the file is not a well-formed grammar, or not
+	 * a valid one if this parser is validating.
+	 * @throws IOException If the file cannot be read.
+	 */
+	public Grammar parse(File grammarFile) throws IOException, PepException {
+		InputStream in = new FileInputStream(grammarFile);
+		try {
+			return parse(in, grammarFile.toURI().toString());
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Loads a grammar from a stream, which is not closed.
+	 * @param systemId The URI of the grammar, for relative references and
+	 * messages, or <code>null</code>.
+	 * @throws PepException If the stream does not hold a well-formed
+	 * grammar, or a valid one if this parser is validating.
+	 */
+	public Grammar parse(InputStream in, String systemId) throws PepException {
+		XMLStreamReader reader = null;
+		try {
+			reader = INPUTS.createXMLStreamReader(systemId, in);
+			ValidatorHandler validator = null;
+			if(validating && getSchema() != null) {
+				validator = getSchema().newValidatorHandler();
+				validator.setDocumentLocator(locator(reader));
+				validator.startDocument();
+			}
+
+			Grammar g = null;
+			Category left = null; // of the rule being read
+			List<Category> right = new ArrayList<Category>();
+			int depth = 0, ruleDepth = -1;
+
+			while(reader.hasNext()) {
+				switch(reader.next()) {
+					case XMLStreamConstants.START_ELEMENT:
+						depth++;
+						if(validator != null) {
+							startElement(validator, reader);
+						}
+
+						if(depth == 1) {
+							g = new Grammar(attribute(reader, "name"));
+						}
+						else if(left == null) {
+							if(reader.getLocalName().equals("rule")) {
+								left = new Category(attribute(reader, "category"));
+								ruleDepth = depth;
+							}
+						}
+						else if(depth == ruleDepth + 1) {
+							right.add(new Category(attribute(reader, "name"),
+								attribute(reader, "terminal").equals("true")));
+						}
+						break;
+
+					case XMLStreamConstants.END_ELEMENT:
+						if(validator != null) {
+							endElement(validator, reader);
+						}
+
+						if(depth == ruleDepth) {
+							g.addRule(new Rule(left,
+								right.toArray(new Category[right.size()])));
+							left = null;
+							right.clear();
+							ruleDepth = -1;
+						}
+						depth--;
+						break;
+
+					case XMLStreamConstants.CHARACTERS:
+					case XMLStreamConstants.CDATA:
+					case XMLStreamConstants.SPACE:
+						if(validator != null) {
+							validator.characters(reader.getTextCharacters(),
+								reader.getTextStart(), reader.getTextLength());
+						}
+						break;
+
+					default:
+						// comments, processing instructions
+				}
+			}
+
+			if(validator != null) {
+				validator.endDocument();
+			}
+
+			return g;
+		}
+		catch(IllegalArgumentException iae) {
+			throw new PepException("problem loading grammar", iae);
+		}
+		catch(SAXException se) {
+			throw new PepException("invalid grammar", se);
+		}
+		catch(XMLStreamException xse) {
+			throw new PepException("problem parsing", xse);
+		}
+		finally {
+			if(reader != null) {
+				try {
+					reader.close();
+				}
+				catch(XMLStreamException ignore) {
+					// the stream is left open anyway
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets an attribute without a namespace, or the empty string if it is
+	 * not present.
+	 */
+	private static String attribute(XMLStreamReader reader, String name) {
+		String value = reader.getAttributeValue(null, name);
+		return (value == null) ? "" : value;
+	}
+
+	private static void startElement(ValidatorHandler validator,
+			XMLStreamReader reader) throws SAXException {
+		for(int i = 0; i < reader.getNamespaceCount(); i++) {
+			validator.startPrefixMapping(prefix(reader.getNamespacePrefix(i)),
+				reader.getNamespaceURI(i));
+		}
+
+		AttributesImpl attributes = new AttributesImpl();
+		for(int i = 0; i < reader.getAttributeCount(); i++) {
+			String uri = reader.getAttributeNamespace(i);
+			String local = reader.getAttributeLocalName(i);
+			attributes.addAttribute((uri == null) ? "" : uri, local,
+				qName(reader.getAttributePrefix(i), local),
+				reader.getAttributeType(i), reader.getAttributeValue(i));
+		}
+
+		String uri = reader.getNamespaceURI();
+		validator.startElement((uri == null) ? "" : uri, reader.getLocalName(),
+			qName(reader.getPrefix(), reader.getLocalName()), attributes);
+	}
+
+	private static void endElement(ValidatorHandler validator,
+			XMLStreamReader reader) throws SAXException {
+		String uri = reader.getNamespaceURI();
+		validator.endElement((uri == null) ? "" : uri, reader.getLocalName(),
+			qName(reader.getPrefix(), reader.getLocalName()));
+
+		for(int i = 0; i < reader.getNamespaceCount(); i++) {
+			validator.endPrefixMapping(prefix(reader.getNamespacePrefix(i)));
+		}
+	}
+
+	private static String prefix(String prefix) {
+		return (prefix == null) ? "" : prefix;
+	}
+
+	private static String qName(String prefix, String local) {
+		return (prefix == null || prefix.isEmpty()) ? local
+			: prefix + ':' + local;
+	}
+
+	/**
+	 * Tells the validator where the reader is, for its messages.
+	 */
+	private static Locator locator(final XMLStreamReader reader) {
+		return new Locator() {
+			public String getPublicId() {
+				return reader.getLocation().getPublicId();
+			}
+
+			public String getSystemId() {
+				return reader.getLocation().getSystemId();
+			}
+
+			public int getLineNumber() {
+				return reader.getLocation().getLineNumber();
+			}
+
+			public int getColumnNumber() {
+				return reader.getLocation().getColumnNumber();
+			}
+		};
+	}
+}
@@ -0,0 +1,705 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import static org.xproc.pep.Category.START;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+
+/**
+ * A parse that is fed its tokens one at a time, as they become available.
+ * <p>
+ * An incremental parse is {@link EarleyParser#startParse(Category) started}
+ * for a seed category. Each token {@link #offer(String) offered} to it is
+ * scanned right away, and the answer tells whether the tokens seen so far
+ * are still a prefix of some string the seed category derives, so that a
+ * caller can stop reading input as soon as it cannot be parsed. Whether
+ * the tokens seen so far are already a complete string can be tested with
+ * {@link #isAccepting()} at any time. When there are no more tokens,
+ * {@link #finish()} gives the {@link Parse parse}.
+ * <p>
+ * All of these share the same chart, so the work done for one token is
+ * never repeated for the next. {@link EarleyParser#parse(Iterable, Category)}
+ * itself just offers every token to an incremental parse and finishes it.
+ * <p>
+ * The parser's {@link ParserOption options} and grammar are read when the
+ * parse is started, and changing them afterward has no effect on it. So
+ * any number of incremental parses can be underway at the same time, with
+ * the same parser, in different threads. Each incremental parse, though,
+ * is not synchronized; it should be fed from one thread at a time. The
+ * listeners are read when the parse is started too, with the
+ * {@link ParserListener#getEventTypes() event types} the listener wants.
+ * @see EarleyParser#startParse(Category)
+ */
+public class IncrementalParse {
+	final EarleyParser parser;
+	final ItemChart items;
+	final Parse parse;
+	final boolean predictPreterm, ignoreCase, memoize, lookahead;
+	final boolean recognizing; // no derivations, tokens, or dead sets kept
+
+	final ParserListener listener;
+	final Set<ParserEventType> events; // that the listener is notified of
+	final ChartListener chartListener;
+	final boolean itemEvents; // whether any listener is told of new items
+
+	final boolean timing; // see ParserOption.TIME_PHASES
+	final long[] wall, cpu; // by phase, if timing and measurable
+	private final long started;
+	private final ParseFlightEvent flight; // null unless recorded
+	final boolean phaseEvents; // whether PhaseFlightEvents are recorded
+
+	final int[] predicted; // last index each category was predicted at
+	int index;
+
+	private final boolean seeded; // false if there is nothing to parse
+	private boolean closed, finished;
+	private int swept; // index of the oldest set not yet swept
+	private int[][] byCodePoint; // matching terminals, see matching(int)
+
+	/**
+	 * Starts a new incremental parse for the specified seed category, seeding
+	 * the chart and notifying the parser's listener.
+	 * @throws PepException If <code>seed</code> is <code>null</code>,
+	 * unless the parser's listener decides not to re-throw.
+	 */
+	IncrementalParse(EarleyParser parser, Category seed)
+			throws PepException {
+		this(parser, seed, false);
+	}
+
+	/**
+	 * Starts a new incremental parse, which only recognizes its tokens if
+	 * <code>recognizing</code> is <code>true</code> and the parser's listener
+	 * wants no edges and no completed parse.
+	 * @see EarleyParser#recognize(Iterable, Category)
+	 */
+	IncrementalParse(EarleyParser parser, Category seed, boolean recognizing)
+			throws PepException {
+		this.parser = parser;
+		started = System.nanoTime();
+		flight = ParseFlightEvent.start();
+		phaseEvents = PhaseFlightEvent.enabled();
+
+		listener = parser.listener;
+		events = EnumSet.noneOf(ParserEventType.class);
+		if(listener != null) {
+			events.addAll(listener.getEventTypes());
+		}
+		chartListener = parser.chartListener;
+		itemEvents = (chartListener != null
+			|| !Collections.disjoint(events, ParserEventType.EDGES));
+		this.recognizing = (recognizing && !itemEvents
+			&& !events.contains(ParserEventType.PARSE_COMPLETE));
+
+		CompiledGrammar cg = parser.grammar.compile();
+		items = new ItemChart(cg);
+		parse = new Parse(seed, items);
+		parse.session = this;
+
+		// get and cache boolean values, from options that may be replaced
+		Map<ParserOption, Boolean> options = parser.options;
+		boolean pp = EarleyParser.getOption(options,
+			ParserOption.PREDICT_FOR_PRETERMINALS);
+		ignoreCase = EarleyParser.getOption(options,
+			ParserOption.IGNORE_TERMINAL_CASE);
+		// listeners would miss the items below the top, so only memoize without
+		memoize = (!itemEvents && EarleyParser.getOption(options,
+			ParserOption.MEMOIZE_RIGHT_RECURSION));
+		lookahead = EarleyParser.getOption(options,
+			ParserOption.PREDICT_WITH_LOOKAHEAD);
+		timing = EarleyParser.getOption(options, ParserOption.TIME_PHASES);
+		wall = timing ? new long[ParseStatistics.Phase.values().length] : null;
+		cpu = (timing && ParseStatistics.cpuTime() >= 0L)
+			? new long[wall.length] : null;
+		predicted = new int[cg.categories.length];
+		Arrays.fill(predicted, -1);
+
+		if(seed == null) {
+			predictPreterm = pp;
+			seeded = false;
+			fireParseError(index, "invalid seed category: " + seed);
+			return;
+		}
+
+		if(!pp && cg.incompatibleRule != null) {
+			// grammar has rules that don't work if not predicting preterms
+			pp = true;
+			fireParseMessage("setting "
+				+ ParserOption.PREDICT_FOR_PRETERMINALS.name() + " to true;"
+				+ " grammar contains incompatible rule: " + cg.incompatibleRule);
+		}
+		predictPreterm = pp;
+
+		int startRule = cg.startRule(seed);
+		if(startRule < 0) { // no rules for seed, so nothing to predict
+			Edge seedEdge = new Edge(DottedRule.startRule(seed), index);
+			parse.chart = new Chart();
+			parse.items = null;
+			parse.chart.addEdge(index, seedEdge);
+			if(events.contains(ParserEventType.PARSER_SEEDED)) {
+				listener.parserSeeded(new EdgeEvent(parser, index, seedEdge));
+			}
+			seeded = false;
+		}
+		else {
+			int seedItem = items.set(index).add(cg.dottedBase[startRule], index);
+			if(itemEvents) { // notify listeners
+				itemAdded(ParserEventType.PARSER_SEEDED, index, seedItem);
+			}
+			seeded = true;
+		}
+	}
+
+	/**
+	 * Gets the seed category this parse was started for.
+	 */
+	public Category getSeed() {
+		return parse.seed;
+	}
+
+	/**
+	 * Gets the number of tokens offered to this parse so far.
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Scans the next token of the input.
+	 * @param token The next token.
+	 * @return <code>true</code> iff the tokens offered so far, including
+	 * <code>token</code>, are a prefix of some string the seed category
+	 * derives. Once this returns <code>false</code>, no further tokens can
+	 * make the parse succeed.
+	 * @throws PepException If <code>token</code> is <code>null</code>,
+	 * unless the parser's listener decides not to re-throw.
+	 * @throws IllegalStateException If this parse is already
+	 * {@link #finish() finished}.
+	 */
+	public boolean offer(String token) throws PepException {
+		if(finished) {
+			throw new IllegalStateException("parse already finished");
+		}
+
+		int[] terminals = (token == null) ? null
+			: items.grammar.matching(token, ignoreCase);
+		if(seeded) { // predictions can be filtered by the token now
+			close((terminals == null) ? null : expected(terminals));
+		}
+
+		if(!recognizing) {
+			record(token); // add to tokens in parse
+		}
+		if(events.contains(ParserEventType.TOKEN_CONSUMED)) {
+			listener.tokenConsumed(token);
+		}
+		return scan(terminals);
+	}
+
+	/**
+	 * Scans the next character of the input, as a token consisting of a
+	 * single code point. This works like {@link #offer(String)}, but no
+	 * string is created for the token unless the parser has a listener to
+	 * notify of it. The terminals that match each character are only found once,
+	 * so a grammar whose terminals are {@link CategoryCharacterSet character
+	 * sets} tests each of them once per distinct character of the input,
+	 * rather than once per character.
+	 * @param codePoint The next character.
+	 * @return <code>true</code> iff the tokens offered so far are a prefix of
+	 * some string the seed category derives.
+	 * @throws IllegalArgumentException If <code>codePoint</code> is not a
+	 * valid Unicode code point.
+	 * @throws IllegalStateException If this parse is already
+	 * {@link #finish() finished}.
+	 * @see EarleyParser#parseCharacters(CharSequence, Category)
+	 */
+	public boolean offer(int codePoint) {
+		if(finished) {
+			throw new IllegalStateException("parse already finished");
+		}
+		if(!Character.isValidCodePoint(codePoint)) {
+			throw new IllegalArgumentException("invalid code point: "
+				+ codePoint);
+		}
+
+		int[] terminals = matching(codePoint);
+		if(seeded) {
+			close(expected(terminals));
+		}
+
+		if(!recognizing) {
+			if(parse.tokens instanceof CodePoints) {
+				((CodePoints)parse.tokens).add(codePoint);
+			}
+			else if(parse.tokens.isEmpty()) { // kept as code points from now on
+				CodePoints codePoints = new CodePoints();
+				codePoints.add(codePoint);
+				parse.tokens = codePoints;
+			}
+			else {
+				parse.tokens.add(new String(Character.toChars(codePoint)));
+			}
+		}
+		if(events.contains(ParserEventType.TOKEN_CONSUMED)) {
+			listener.tokenConsumed(new String(Character.toChars(codePoint)));
+		}
+
+		try {
+			return scan(terminals);
+		}
+		catch(PepException pe) { // only thrown for null tokens
+			throw new IllegalStateException(pe);
+		}
+	}
+
+	/**
+	 * Scans a token from the current index, once the set at that index is
+	 * closed and the token has been recorded.
+	 * @param terminals The terminals the token matches, or <code>null</code>
+	 * if the token is <code>null</code>.
+	 * @return Whether the parse is still {@link #isViable() viable}.
+	 */
+	private boolean scan(int[] terminals) throws PepException {
+		if(!seeded) {
+			index++;
+			return false;
+		}
+
+		long w = timing ? System.nanoTime() : 0L, c = cpuTime();
+		PhaseFlightEvent event = PhaseFlightEvent.start(phaseEvents);
+		try {
+			parser.scan(this, index++, terminals); // scan and increment index
+		}
+		catch(PepException pe) {
+			fireParseError(index, pe); // may re-throw
+		}
+		finally {
+			closed = false;
+			if(timing) {
+				lap(ParseStatistics.Phase.SCAN, w, c);
+			}
+			PhaseFlightEvent.finish(event, ParseStatistics.Phase.SCAN, index);
+		}
+
+		if(recognizing // sweep once as many sets were added as were kept
+				&& index - swept >= Math.max(64, items.keptCount << 1)) {
+			sweep();
+		}
+
+		return isViable();
+	}
+
+	/**
+	 * Tests whether the tokens offered so far are a prefix of some string the
+	 * seed category derives.
+	 * @return <code>false</code> if no further tokens can make this parse
+	 * succeed.
+	 */
+	public boolean isViable() {
+		return seeded && !parse.error && items.peek(index) != null;
+	}
+
+	/**
+	 * Tests whether the tokens offered so far are a string the seed category
+	 * derives, that is, whether {@link #finish() finishing} now would give an
+	 * {@link Status#ACCEPT accepted} parse.
+	 * @return <code>true</code> iff the seed category has been completed over
+	 * all of the tokens offered so far.
+	 */
+	public boolean isAccepting() {
+		if(!isViable()) {
+			return false;
+		}
+
+		close(null); // next token not known, so predict regardless
+		return (items.findPassive(index, items.grammar.getCategoryId(START), 0)
+			>= 0);
+	}
+
+	/**
+	 * Tests whether this parse has been {@link #finish() finished}.
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Ends the input, completing the chart and notifying the parser's
+	 * listener that the parse is complete. The parse's
+	 * {@link Parse#getStatistics() statistics} are taken now. Finishing an
+	 * already finished parse has no further effect.
+	 * @return The parse of the tokens offered, whose
+	 * {@link Parse#getStatus() status} tells whether they were accepted.
+	 */
+	public Parse finish() {
+		if(!finished) {
+			if(seeded) {
+				close(expected(new int[0])); // end of the input
+			}
+			finished = true;
+			if(!recognizing) { // whose sets are not all kept
+				parse.statistics = statistics();
+			}
+			if(flight != null) {
+				flight.finish(this, parse.error ? Status.ERROR
+					: isAccepting() ? Status.ACCEPT : Status.REJECT);
+			}
+			if(events.contains(ParserEventType.PARSE_COMPLETE)) {
+				listener.parseComplete(new ParseEvent(parser, parse));
+			}
+		}
+
+		return parse;
+	}
+
+	/**
+	 * Takes the Earley sets before an edit from a previous parse, instead of
+	 * parsing the tokens before it again. This must be done before any
+	 * token is offered. The token just before the edit is left to be
+	 * offered again, since the set it is scanned from may depend on it.
+	 * @param previous A finished parse for the same seed category.
+	 * @param edit The index of the first token that changed.
+	 * @return <code>true</code> iff the chart of <code>previous</code> was
+	 * made for the same grammar and with the same options, so that its sets
+	 * can be reused.
+	 */
+	boolean resume(Parse previous, int edit) {
+		IncrementalParse was = previous.session;
+		if(was == null || !was.finished || !was.seeded || !seeded
+				|| previous.error || was.items.grammar != items.grammar
+				|| was.predictPreterm != predictPreterm
+				|| was.ignoreCase != ignoreCase || was.lookahead != lookahead) {
+			return false;
+		}
+
+		if(edit > 0) {
+			int keep = Math.min(edit, was.items.length);
+			items.sets = new EarleySet[Math.max(keep, 16)];
+			System.arraycopy(was.items.sets, 0, items.sets, 0, keep);
+			items.length = keep;
+
+			index = edit - 1;
+			closed = true; // and its successor is scanned again
+			if(previous.tokens instanceof CodePoints) {
+				parse.tokens = new CodePoints();
+			}
+			for(String token : previous.tokens.subList(0, index)) {
+				record(token);
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Compares the items that can still be advanced in the last set scanned
+	 * from with those of the corresponding set of a previous parse.
+	 * @param old The item chart of the previous parse.
+	 * @param edit The index of the first token that changed.
+	 * @param shift The number of tokens added by the edit, negative if
+	 * tokens were removed.
+	 * @param aligned The index from which on the tokens are the same as
+	 * those of the previous parse, moved by <code>shift</code>.
+	 * @return The lowest origin at or after <code>edit</code> among the active
+	 * items of the set, {@link Integer#MAX_VALUE} if there is none, or
+	 * <code>-1</code> if the active items of the two sets differ.
+	 */
+	int align(ItemChart old, int edit, int shift, int aligned) {
+		int k = index - 1;
+		EarleySet set = items.peek(k), was = old.peek(k - shift);
+		if(set == null || was == null) {
+			return -1;
+		}
+
+		// deferred completions only add passive items, so peeking is enough
+		int[] dottedNext = items.grammar.dottedNext;
+		int active = 0, low = Integer.MAX_VALUE;
+		for(int item = 0; item < set.size; item++) {
+			if(dottedNext[set.dotted[item]] >= 0) {
+				active++;
+				if(set.origin[item] >= edit) {
+					low = Math.min(low, set.origin[item]);
+				}
+			}
+		}
+
+		for(int item = 0; item < was.size; item++) {
+			if(dottedNext[was.dotted[item]] >= 0) {
+				int o = was.origin[item];
+				if(o >= edit) {
+					o += shift;
+					if(o < aligned) { // nothing to compare it with
+						return -1;
+					}
+				}
+				if(--active < 0 || set.find(was.dotted[item], o) < 0) {
+					return -1;
+				}
+			}
+		}
+
+		return (active == 0) ? low : -1;
+	}
+
+	/**
+	 * Takes the rest of the chart from a previous parse, once the sets up to
+	 * the last one scanned from are known to lead to the same items as the
+	 * corresponding sets of the previous parse. This finishes the chart.
+	 * @param old The item chart of the previous parse.
+	 * @param edit The index of the first token that changed.
+	 * @param shift The number of tokens added by the edit, negative if
+	 * tokens were removed.
+	 * @param rest The tokens after the last one offered, the same as those
+	 * at the end of the previous parse.
+	 * @see #align(ItemChart, int, int)
+	 */
+	void adopt(ItemChart old, int edit, int shift, Iterable<String> rest) {
+		items.adopt(old, index - 1 - shift, edit, shift);
+		for(String token : rest) {
+			record(token);
+			if(events.contains(ParserEventType.TOKEN_CONSUMED)) {
+				listener.tokenConsumed(token);
+			}
+			index++;
+		}
+		closed = true; // as the previous parse was
+	}
+
+	/**
+	 * Discards the Earley sets that recognition no longer needs. The set at
+	 * the current index is still to be closed, so the sets where any of its
+	 * items began are needed; so are, in turn, the sets where the active
+	 * items of those sets began, since completing them visits those sets.
+	 * No other set is ever visited again.
+	 */
+	private void sweep() {
+		int[] dottedNext = items.grammar.dottedNext;
+		TreeSet<Integer> pending = new TreeSet<Integer>();
+		int[] live = new int[16];
+		int count = 0;
+
+		pending.add(index);
+		while(!pending.isEmpty()) {
+			int p = pending.pollLast(); // latest first, origins only go back
+			EarleySet set = items.peek(p);
+			if(set == null) {
+				continue;
+			}
+			if(p < index) {
+				if(count == live.length) {
+					live = Arrays.copyOf(live, count << 1);
+				}
+				live[count++] = p;
+			}
+
+			for(int item = 0; item < set.size; item++) {
+				int o = set.origin[item];
+				if(o < p && (p == index || dottedNext[set.dotted[item]] >= 0)) {
+					pending.add(o);
+				}
+			}
+		}
+
+		for(int i = 0, j = count - 1; i < j; i++, j--) { // ascending
+			int t = live[i];
+			live[i] = live[j];
+			live[j] = t;
+		}
+		items.discard(index, live, count);
+		swept = index;
+	}
+
+	/**
+	 * Gets the terminals the next token matches, if predictions are
+	 * filtered by lookahead.
+	 * @param terminals The identifiers of the terminals the next token
+	 * matches, none at the end of the input.
+	 * @return The terminals as a set, or <code>null</code> if predictions are
+	 * not filtered.
+	 */
+	private BitSet expected(int[] terminals) {
+		return lookahead ? items.grammar.lookahead(terminals) : null;
+	}
+
+	/**
+	 * Finds the terminals that match a code point. Those for code points in
+	 * the Basic Multilingual Plane are kept, in a table that grows to the
+	 * highest code point offered.
+	 * @see CompiledGrammar#matching(int, boolean)
+	 */
+	private int[] matching(int codePoint) {
+		if(codePoint > Character.MAX_VALUE) {
+			return items.grammar.matching(codePoint, ignoreCase);
+		}
+
+		if(byCodePoint == null || codePoint >= byCodePoint.length) {
+			int length = Math.max(128, Integer.highestOneBit(codePoint) << 1);
+			byCodePoint = (byCodePoint == null) ? new int[length][]
+				: Arrays.copyOf(byCodePoint, length);
+		}
+		int[] terminals = byCodePoint[codePoint];
+		if(terminals == null) {
+			terminals = items.grammar.matching(codePoint, ignoreCase);
+			byCodePoint[codePoint] = terminals;
+		}
+
+		return terminals;
+	}
+
+	/**
+	 * Adds a token to those of the parse. Tokens are kept as
+	 * {@link CodePoints code points} for as long as they are single
+	 * characters.
+	 */
+	private void record(String token) {
+		if(parse.tokens instanceof CodePoints && !CodePoints.isCodePoint(token)) {
+			parse.tokens = new ArrayList<String>(parse.tokens);
+		}
+		parse.tokens.add(token);
+	}
+
+	/**
+	 * Notifies the listeners that want it of an item added to the Earley set
+	 * at the given index. The listener is handed an {@link Edge edge}, which
+	 * is built from the item and those it was derived from; the chart
+	 * listener just the numbers of the item.
+	 * @param type How the item was added, as one of the edge event types.
+	 */
+	void itemAdded(ParserEventType type, int index, int item) {
+		if(chartListener != null) {
+			EarleySet set = items.peek(index);
+			CompiledGrammar cg = items.grammar;
+			int d = set.dotted[item], rule = cg.dottedRule[d];
+			int dot = d - cg.dottedBase[rule], origin = set.origin[item];
+			switch(type) {
+				case EDGE_SCANNED:
+					chartListener.itemScanned(index, rule, dot, origin);
+					break;
+				case EDGE_COMPLETED:
+					chartListener.itemCompleted(index, rule, dot, origin);
+					break;
+				default: // predicted, or seeded
+					chartListener.itemPredicted(index, rule, dot, origin);
+			}
+		}
+
+		if(events.contains(type)) {
+			EdgeEvent edgeEvent = new EdgeEvent(parser, index,
+				items.edge(index, item));
+			switch(type) {
+				case PARSER_SEEDED:
+					listener.parserSeeded(edgeEvent);
+					break;
+				case EDGE_PREDICTED:
+					listener.edgePredicted(edgeEvent);
+					break;
+				case EDGE_SCANNED:
+					listener.edgeScanned(edgeEvent);
+					break;
+				default:
+					listener.edgeCompleted(edgeEvent);
+			}
+		}
+	}
+
+	/**
+	 * Reads the CPU time of the current thread, if phases are timed.
+	 * @return The time, or <code>0</code> if it is not measured.
+	 */
+	long cpuTime() {
+		return (cpu == null) ? 0L : ParseStatistics.cpuTime();
+	}
+
+	/**
+	 * Adds the time since the specified clock readings to a phase.
+	 * @see #cpuTime()
+	 */
+	void lap(ParseStatistics.Phase phase, long wallStart, long cpuStart) {
+		wall[phase.ordinal()] += System.nanoTime() - wallStart;
+		if(cpu != null) {
+			cpu[phase.ordinal()] += ParseStatistics.cpuTime() - cpuStart;
+		}
+	}
+
+	/**
+	 * Takes the statistics of the parse as it is now.
+	 */
+	private ParseStatistics statistics() {
+		long elapsed = System.nanoTime() - started;
+		if(!timing) {
+			return new ParseStatistics(parse.items, index, elapsed, null, null);
+		}
+
+		// predictions are timed while closing sets, which is timed as a whole
+		int p = ParseStatistics.Phase.PREDICT.ordinal();
+		int c = ParseStatistics.Phase.COMPLETE.ordinal();
+		long[] w = wall.clone();
+		w[c] -= w[p];
+		long[] u = null;
+		if(cpu != null) {
+			u = cpu.clone();
+			u[c] -= u[p];
+		}
+
+		return new ParseStatistics(parse.items, index, elapsed, w, u);
+	}
+
+	void fireParseMessage(String message) {
+		if(events.contains(ParserEventType.PARSE_MESSAGE)) {
+			listener.parseMessage(new ParseEvent(parser, parse), message);
+		}
+	}
+
+	void fireParseError(int index, String message) throws PepException {
+		fireParseError(index, new PepException(message));
+	}
+
+	/**
+	 * Marks the parse as an error and notifies the listener, if it wants
+	 * parse errors.
+	 * @throws PepException The cause, if there is no listener to notify.
+	 */
+	void fireParseError(int index, PepException cause) throws PepException {
+		parse.error = true;
+		if(!events.contains(ParserEventType.PARSE_ERROR)) {
+			throw cause; // re-throw if no listener
+		}
+
+		listener.parseError(new ParseErrorEvent(parser, index, parse, cause));
+	}
+
+	/**
+	 * Closes the Earley set at the current index, unless that has already
+	 * been done.
+	 * @param expected The terminals matching the next token, or
+	 * <code>null</code> to predict regardless of the next token.
+	 */
+	private void close(BitSet expected) {
+		if(!closed) {
+			long w = timing ? System.nanoTime() : 0L, c = cpuTime();
+			PhaseFlightEvent event = PhaseFlightEvent.start(phaseEvents);
+			parser.close(this, index, expected);
+			closed = true;
+			if(timing) { // all of it, predictions are taken out later
+				lap(ParseStatistics.Phase.COMPLETE, w, c);
+			}
+			PhaseFlightEvent.finish(event, ParseStatistics.Phase.COMPLETE, index);
+		}
+	}
+}
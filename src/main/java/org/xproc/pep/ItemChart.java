@@ -0,0 +1,593 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+
+
+/**
+ * The item storage an {@link EarleyParser Earley parser} fills while parsing.
+ * <p>
+ * An item chart keeps one {@link EarleySet Earley set} per string index in an
+ * array, so finding the set for an index never involves boxing or a tree
+ * lookup. {@link Chart Charts} returned by the parser are views over an item
+ * chart: their edge sets are created by {@link #edgeSets()} and reflect the
+ * items without copying them.
+ * <p>
+ * Completions the parser deferred along deterministic reduction paths are
+ * carried out when a set is first {@link #get(int) read}, so callers outside
+ * the parser always see every item.
+ * @see EarleySet
+ * @see Chart#Chart(ItemChart)
+ */
+final class ItemChart {
+	final CompiledGrammar grammar;
+
+	EarleySet[] sets; // from index base on
+	int base, length; // length is one past the highest index with a set
+
+	private Edge[][] edges; // by index and item, materialized lazily
+
+	private int[] keptAt; // indexes before base whose sets are still needed
+	private EarleySet[] kept;
+	int keptCount;
+
+	/**
+	 * Creates an empty item chart for the specified compiled grammar.
+	 */
+	ItemChart(CompiledGrammar grammar) {
+		this.grammar = grammar;
+		sets = new EarleySet[16];
+		edges = new Edge[16][];
+	}
+
+	/**
+	 * Gets the Earley set at the specified index, if any, after adding the
+	 * items of any completions deferred in it.
+	 * @return The set, or <code>null</code> if no items were ever added at
+	 * <code>index</code>.
+	 * @see #peek(int)
+	 */
+	EarleySet get(int index) {
+		EarleySet set = peek(index);
+		if(set != null && set.expanded < set.deferrals) {
+			expand(set);
+		}
+
+		return set;
+	}
+
+	/**
+	 * Gets the Earley set at the specified index as the parser left it, with
+	 * deferred completions still pending.
+	 * @return The set, or <code>null</code> if no items were ever added at
+	 * <code>index</code>.
+	 */
+	EarleySet peek(int index) {
+		if(index >= base) {
+			return (index >= length) ? null : sets[index - base];
+		}
+
+		int k = (keptCount == 0) ? -1
+			: Arrays.binarySearch(keptAt, 0, keptCount, index);
+		return (k < 0) ? null : kept[k];
+	}
+
+	/**
+	 * Gets the Earley set at the specified index, creating it if needed.
+	 */
+	EarleySet set(int index) {
+		int i = index - base;
+		if(i >= sets.length) {
+			sets = Arrays.copyOf(sets, Math.max(sets.length << 1, i + 1));
+		}
+
+		EarleySet set = sets[i];
+		if(set == null) {
+			set = new EarleySet(grammar.dottedNext);
+			sets[i] = set;
+			if(index >= length) {
+				length = index + 1;
+			}
+		}
+
+		return set;
+	}
+
+	/**
+	 * Discards the sets before an index, except for the specified ones, so
+	 * that a chart used only for recognition does not grow with the length
+	 * of the input. Discarded sets are no longer found by {@link #peek(int)},
+	 * so this must only be done for sets that are never visited again.
+	 * @param index The index from which on all sets are kept.
+	 * @param live The ascending indexes before <code>index</code> whose sets
+	 * are still needed.
+	 * @param count The number of indexes in <code>live</code>.
+	 */
+	void discard(int index, int[] live, int count) {
+		EarleySet[] k = new EarleySet[count];
+		for(int i = 0; i < count; i++) {
+			k[i] = peek(live[i]);
+		}
+		keptAt = Arrays.copyOf(live, count);
+		kept = k;
+		keptCount = count;
+
+		EarleySet[] window = new EarleySet[Math.max(16, (length - index) << 1)];
+		if(length > index) {
+			System.arraycopy(sets, index - base, window, 0, length - index);
+		}
+		sets = window;
+		base = index;
+	}
+
+	/**
+	 * Replaces the sets after an index with those of another chart for the
+	 * same grammar, after the sets up to that index were found to lead to
+	 * the same items in both. If no string indexes move, the sets are
+	 * shared rather than copied; sets only ever receive items that their
+	 * contents already imply, so sharing them is safe.
+	 * @param other The chart to take the sets from.
+	 * @param from The index in <code>other</code> after which sets are taken.
+	 * @param edit The first index of <code>other</code> whose position
+	 * differs in this chart.
+	 * @param shift The difference between the positions of the same token in
+	 * this chart and in <code>other</code>, for indexes from
+	 * <code>edit</code> on.
+	 * @see EarleySet#shifted(int, int)
+	 */
+	void adopt(ItemChart other, int from, int edit, int shift) {
+		int end = other.length + shift;
+		if(end > sets.length) {
+			sets = Arrays.copyOf(sets, end);
+		}
+		Arrays.fill(sets, from + shift + 1, sets.length, null);
+		if(from + shift + 1 < edges.length) {
+			Arrays.fill(edges, from + shift + 1, edges.length, null);
+		}
+
+		if(shift == 0) {
+			System.arraycopy(other.sets, from + 1, sets, from + 1,
+				other.length - from - 1);
+		}
+		else {
+			for(int i = from + 1; i < other.length; i++) {
+				EarleySet set = other.sets[i];
+				sets[i + shift] = (set == null) ? null
+					: set.shifted(edit, shift);
+			}
+		}
+		length = Math.max(end, from + shift + 1);
+	}
+
+	/**
+	 * Gets Joop Leo's transitive item for the completion of a category at
+	 * the specified index. When exactly one item in the set at
+	 * <code>index</code> is waiting for <code>category</code>, and the dot of
+	 * that item is just before its last category, completing the category
+	 * leads to exactly one new item. If that item's origin is earlier and
+	 * the same holds there for its left side, the path continues; the
+	 * transitive item is the topmost item on this deterministic reduction
+	 * path. Results are memoized in the set, so a right-recursive chain is
+	 * only walked once no matter how often it is completed.
+	 * <p>
+	 * The set at <code>index</code> and every set before it must be closed.
+	 * @return An array holding the waiting item at <code>index</code>, and
+	 * the dotted rule identifier, origin and pivot of the transitive item.
+	 * Its first element is <code>-1</code> if there is no deterministic
+	 * reduction path.
+	 */
+	int[] transitive(int index, int category) {
+		int[] path = new int[3 * 8]; // index, category and waiting item per step
+		int steps = 0;
+		int[] top = null;
+
+		int i = index, c = category;
+		while(top == null) {
+			EarleySet set = peek(i);
+			if(set.transitive != null) {
+				top = set.transitive.get(c);
+				if(top != null) {
+					break;
+				}
+			}
+
+			if(steps * 3 + 3 > path.length) {
+				path = Arrays.copyOf(path, path.length << 1);
+			}
+
+			int w = waiting(set, c);
+			path[steps * 3] = i;
+			path[steps * 3 + 1] = c;
+			path[steps * 3 + 2] = w;
+			steps++;
+
+			if(reduces(set, i, w)) {
+				c = grammar.left[grammar.dottedRule[set.dotted[w]]];
+				i = set.origin[w];
+			}
+			else { // not deterministic, the path ends below
+				top = NO_PATH;
+			}
+		}
+
+		while(--steps >= 0) { // memoize from the top of the path down
+			i = path[steps * 3];
+			int w = path[steps * 3 + 2];
+			EarleySet set = peek(i);
+			if(!reduces(set, i, w)) {
+				top = NO_PATH;
+			}
+			else if(top[0] < 0) { // the item completed here is the topmost
+				top = new int[] {w, set.dotted[w] + 1, set.origin[w], i};
+			}
+			else {
+				top = new int[] {w, top[1], top[2], top[3]};
+			}
+
+			if(set.transitive == null) {
+				set.transitive = new HashMap<Integer, int[]>();
+			}
+			set.transitive.put(path[steps * 3 + 1], top);
+		}
+
+		return top;
+	}
+
+	private static final int[] NO_PATH = {-1, -1, -1, -1};
+
+	/**
+	 * Tests whether the only waiting item in the set at <code>index</code>
+	 * continues a deterministic reduction path: its dot is before its last
+	 * category and its origin is earlier, so that paths never loop.
+	 */
+	private boolean reduces(EarleySet set, int index, int waiting) {
+		return (waiting >= 0
+			&& grammar.dottedNext[set.dotted[waiting] + 1] < 0
+			&& set.origin[waiting] < index);
+	}
+
+	/**
+	 * Finds the only item in a set whose dot is before the specified category.
+	 * @return The item's position, or <code>-1</code> if no item or more than
+	 * one item is waiting for <code>category</code>.
+	 */
+	private int waiting(EarleySet set, int category) {
+		int item = set.firstWaiting(category);
+		return (item >= 0 && set.nextWaiting[item] < 0) ? item : -1;
+	}
+
+	/**
+	 * Adds the items for the completions deferred in a set, walking each
+	 * deterministic reduction path from its bottom to its
+	 * {@link #transitive(int, int) transitive item}.
+	 */
+	private void expand(EarleySet set) {
+		while(set.expanded < set.deferrals) {
+			int c = set.deferred[set.expanded << 1];
+			int k = set.deferred[(set.expanded << 1) + 1];
+			set.expanded++;
+
+			int[] top = transitive(k, c);
+			for(int[] step = top; ; step = transitive(k, c)) {
+				EarleySet origin = peek(k);
+				int d = origin.dotted[step[0]] + 1, o = origin.origin[step[0]];
+				int item = set.find(d, o);
+				if(item < 0) {
+					item = set.add(d, o);
+				}
+				set.addDerivation(item, k);
+
+				if(d == top[1] && o == top[2]) {
+					break;
+				}
+
+				c = grammar.left[grammar.dottedRule[d]];
+				k = o;
+			}
+		}
+	}
+
+	/**
+	 * Tests whether any items are contained at the specified index.
+	 */
+	boolean containsItems(int index) {
+		EarleySet set = get(index);
+		return (set != null && set.size > 0);
+	}
+
+	/**
+	 * Finds the item for an edge at the given index.
+	 * @return The position of the edge's item in its Earley set, or
+	 * <code>-1</code> if the edge is not contained at <code>index</code>.
+	 */
+	int find(int index, Edge edge) {
+		EarleySet set = get(index);
+		if(set == null) {
+			return -1;
+		}
+
+		int d = grammar.dottedId(edge.dottedRule);
+		int item = (d < 0) ? -1 : set.find(d, edge.origin);
+		return (item >= 0 && edge(index, item).equals(edge)) ? item : -1;
+	}
+
+	/**
+	 * Finds the first passive item in the set at <code>index</code> for the
+	 * specified category and origin.
+	 * @return The position of the item, or <code>-1</code> if none exists.
+	 */
+	int findPassive(int index, int category, int origin) {
+		EarleySet set = get(index);
+		if(set != null) {
+			for(int item = 0; item < set.size; item++) {
+				int d = set.dotted[item];
+				if(set.origin[item] == origin && grammar.dottedNext[d] < 0
+						&& grammar.left[grammar.dottedRule[d]] == category) {
+					return item;
+				}
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Gets the edge for an item, creating it the first time it is requested.
+	 * The edge's {@link Edge#getBases() bases} are taken from the item's
+	 * first derivation. For a completion, the basis is the first passive item
+	 * that could have completed it; that item was necessarily added before
+	 * the item being materialized, so materialization always terminates.
+	 * Empty derivations of a nullable category use the rule that first
+	 * showed it nullable, whose right side only has categories that were
+	 * shown nullable before.
+	 * @param index The index of the item's Earley set.
+	 * @param item The item's position in its set.
+	 */
+	Edge edge(int index, int item) {
+		EarleySet set = peek(index);
+		if(index >= edges.length) {
+			edges = Arrays.copyOf(edges,
+				Math.max(edges.length << 1, index + 1));
+		}
+		Edge[] cache = edges[index];
+		if(cache == null || item >= cache.length) {
+			cache = (cache == null) ? new Edge[set.size]
+				: Arrays.copyOf(cache, set.size);
+			edges[index] = cache;
+		}
+
+		Edge edge = cache[item];
+		if(edge == null) {
+			int d = set.dotted[item], o = set.origin[item];
+			Set<Edge> bases = null;
+
+			int derivation = set.derivation[item];
+			if(derivation >= 0) { // advanced from an item at the pivot
+				int pivot = set.pivot[derivation];
+				Edge previous = edge(pivot, peek(pivot).find(d - 1, o));
+				int child = grammar.dottedNext[d - 1];
+				Edge basis;
+				if(grammar.terminal[child]) {
+					basis = previous; // scanned, see Edge.scan()
+				}
+				else if(pivot == index) { // stepped over a nullable category
+					int r = grammar.nullableRule[child];
+					basis = edge(index, set.find(
+						grammar.dottedBase[r] + grammar.right[r].length, index));
+				}
+				else {
+					basis = edge(index, findPassive(index, child, pivot));
+				}
+				bases = Edge.addBasisEdge(previous, basis);
+			}
+
+			edge = new Edge(grammar.dottedRule(d), o, bases);
+			edges[index][item] = edge; // cache may have grown meanwhile
+		}
+
+		return edge;
+	}
+
+	/**
+	 * Creates a sorted map view of the edge sets in this item chart.
+	 */
+	SortedMap<Integer, Set<Edge>> edgeSets() {
+		return new EdgeSets(0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * A read-only sorted map of the non-empty indices in
+	 * <code>[from, to)</code> to their edge sets.
+	 */
+	class EdgeSets extends AbstractMap<Integer, Set<Edge>>
+			implements SortedMap<Integer, Set<Edge>> {
+		final int from, to;
+
+		EdgeSets(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		private int next(int index) {
+			int end = Math.min(to, length);
+			for(int i = Math.max(index, from); i < end; i++) {
+				if(containsItems(i)) {
+					return i;
+				}
+			}
+
+			return -1;
+		}
+
+		private boolean inRange(Object key) {
+			if(key instanceof Integer) {
+				int i = ((Integer)key).intValue();
+				return (i >= from && i < to);
+			}
+
+			return false;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return inRange(key) && containsItems(((Integer)key).intValue());
+		}
+
+		@Override
+		public Set<Edge> get(Object key) {
+			return containsKey(key)
+				? new Edges(((Integer)key).intValue()) : null;
+		}
+
+		@Override
+		public Set<Map.Entry<Integer, Set<Edge>>> entrySet() {
+			return new AbstractSet<Map.Entry<Integer, Set<Edge>>>() {
+				@Override
+				public Iterator<Map.Entry<Integer, Set<Edge>>> iterator() {
+					return new Iterator<Map.Entry<Integer, Set<Edge>>>() {
+						int index = EdgeSets.this.next(from);
+
+						@Override
+						public boolean hasNext() {
+							return (index >= 0);
+						}
+
+						@Override
+						public Map.Entry<Integer, Set<Edge>> next() {
+							if(index < 0) {
+								throw new NoSuchElementException();
+							}
+
+							int i = index;
+							index = EdgeSets.this.next(i + 1);
+							return new SimpleImmutableEntry<Integer, Set<Edge>>(
+								i, new Edges(i));
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					int count = 0;
+					for(int i = next(from); i >= 0; i = next(i + 1)) {
+						count++;
+					}
+
+					return count;
+				}
+			};
+		}
+
+		@Override
+		public Comparator<? super Integer> comparator() {
+			return null;
+		}
+
+		@Override
+		public SortedMap<Integer, Set<Edge>> subMap(Integer fromKey,
+				Integer toKey) {
+			if(fromKey.intValue() > toKey.intValue()) {
+				throw new IllegalArgumentException("fromKey > toKey");
+			}
+			if(!inRange(fromKey) && fromKey.intValue() != to) {
+				throw new IllegalArgumentException("fromKey out of range");
+			}
+			if(!inRange(toKey) && toKey.intValue() != to) {
+				throw new IllegalArgumentException("toKey out of range");
+			}
+
+			return new EdgeSets(fromKey.intValue(), toKey.intValue());
+		}
+
+		@Override
+		public SortedMap<Integer, Set<Edge>> headMap(Integer toKey) {
+			return subMap(from, toKey);
+		}
+
+		@Override
+		public SortedMap<Integer, Set<Edge>> tailMap(Integer fromKey) {
+			return subMap(fromKey, to);
+		}
+
+		@Override
+		public Integer firstKey() {
+			int i = next(from);
+			if(i < 0) {
+				throw new NoSuchElementException();
+			}
+
+			return i;
+		}
+
+		@Override
+		public Integer lastKey() {
+			for(int i = Math.min(to, length) - 1; i >= from; i--) {
+				if(containsItems(i)) {
+					return i;
+				}
+			}
+
+			throw new NoSuchElementException();
+		}
+	}
+
+	/**
+	 * A read-only set view of the edges at one index.
+	 */
+	class Edges extends AbstractSet<Edge> {
+		final int index;
+
+		Edges(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return (o instanceof Edge) && find(index, (Edge)o) >= 0;
+		}
+
+		@Override
+		public Iterator<Edge> iterator() {
+			final EarleySet set = get(index);
+			return new Iterator<Edge>() {
+				int item = 0;
+
+				@Override
+				public boolean hasNext() {
+					return (item < set.size);
+				}
+
+				@Override
+				public Edge next() {
+					if(item >= set.size) {
+						throw new NoSuchElementException();
+					}
+
+					return edge(index, item++);
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return get(index).size;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+
+/**
+ * One alternative derivation of a {@link ForestNode forest node}.
+ * <p>
+ * A packed node splits the span of its node at a {@link #getPivot() pivot}.
+ * Its {@link #getLeft() left child} derives the part of its dotted rule's
+ * right side before the last category preceding the dot, from the node's
+ * origin to the pivot. Its {@link #getRight() right child} is the symbol node
+ * for that last category, from the pivot to the node's index. For example,
+ * the packed node for <code>S -&gt; NP VP *</code> over <code>[0,4]</code>
+ * with pivot <code>2</code> has the intermediate node
+ * <code>S -&gt; NP * VP[0,2]</code> on the left and the symbol node
+ * <code>VP[2,4]</code> on the right.
+ * @see ForestNode#getPackedNodes()
+ */
+public class PackedNode {
+	final ParseForest forest;
+	final int dotted, origin, index, pivot;
+
+	PackedNode(ParseForest forest, int dotted, int origin, int index,
+			int pivot) {
+		this.forest = forest;
+		this.dotted = dotted;
+		this.origin = origin;
+		this.index = index;
+		this.pivot = pivot;
+	}
+
+	/**
+	 * Gets the rule this derivation uses.
+	 * @return The underlying rule of {@link #getDottedRule()}.
+	 */
+	public Rule getRule() {
+		return forest.grammar.rules[forest.grammar.dottedRule[dotted]];
+	}
+
+	/**
+	 * Gets the dotted rule this derivation covers.
+	 * @return For a packed node of a symbol node, a dotted rule with its dot
+	 * at the end. For a packed node of an intermediate node, that node's
+	 * dotted rule.
+	 */
+	public DottedRule getDottedRule() {
+		return forest.grammar.dottedRule(dotted);
+	}
+
+	/**
+	 * Gets the index where the span of this derivation is split.
+	 * @return The origin of the {@link #getRight() right child}.
+	 */
+	public int getPivot() {
+		return pivot;
+	}
+
+	/**
+	 * Gets the dot position of this derivation's dotted rule.
+	 */
+	int position() {
+		return dotted - forest.grammar.dottedBase[
+			forest.grammar.dottedRule[dotted]];
+	}
+
+	/**
+	 * Gets the left child of this derivation.
+	 * @return The intermediate node deriving the categories before the last
+	 * one preceding the dot, or <code>null</code> if there are none.
+	 */
+	public ForestNode getLeft() {
+		return (position() < 2) ? null
+			: new ForestNode(forest, -1, dotted - 1, origin, pivot);
+	}
+
+	/**
+	 * Gets the right child of this derivation.
+	 * @return The symbol node for the last category preceding the dot, or
+	 * <code>null</code> if this derivation is of a rule with an empty right
+	 * side.
+	 */
+	public ForestNode getRight() {
+		return (position() == 0) ? null : new ForestNode(forest,
+			forest.grammar.dottedNext[dotted - 1], -1, pivot, index);
+	}
+
+	/**
+	 * Tests whether this packed node is equal to another by comparing their
+	 * forests, dotted rules, spans, and pivots.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if(obj instanceof PackedNode) {
+			PackedNode op = (PackedNode)obj;
+			return (forest == op.forest && dotted == op.dotted
+				&& origin == op.origin && index == op.index
+				&& pivot == op.pivot);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Computes a hash code for this packed node based on its dotted rule,
+	 * span, and pivot.
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * (31 * (31 * dotted + origin) + index) + pivot;
+	}
+
+	/**
+	 * Gets a string representation of this packed node.
+	 * @return &quot;<code>S -&gt; NP VP *[0,2,4]</code>&quot; for a
+	 * derivation of <code>S</code> over <code>[0,4]</code> with pivot
+	 * <code>2</code>.
+	 */
+	@Override
+	public String toString() {
+		return getDottedRule().toString() + '[' + origin + ',' + pivot + ','
+			+ index + ']';
+	}
+}
@@ -12,11 +12,18 @@ package org.xproc.pep;
 
 import static org.xproc.pep.Category.START;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
 /**
@@ -33,6 +40,15 @@ import java.util.Set;
  * to be obtained using {@link #getParseTrees()}. For a parse of a string
  * using a grammar that permits structural or lexical ambiguity, the methods
  * for fetching parse trees will return sets that contain more than one element.
+ * Since the number of parse trees can grow exponentially with the length of
+ * an ambiguous string, parse trees can also be
+ * {@link #parseTreeIterator() iterated over} or {@link #parseTrees() streamed}
+ * as they are built, or just the {@link #getParseTrees(int) first few} of
+ * them fetched.
+ * <p>
+ * Parses produced by an Earley parser also expose the
+ * {@link #getForest() parse forest} that compactly represents all of their
+ * derivations. Parse trees for such parses are derived from the forest.
  * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
  * @version $LastChangedRevision: 2520 $
  * @see EarleyParser
@@ -43,8 +59,12 @@ public class Parse {
 	Category seed;
 	Chart chart;
 	boolean error;
+	ItemChart items; // null unless created by a parser
+	IncrementalParse session; // the parse that filled items, if any
+	ParseStatistics statistics;
 	
 	private Set<ParseTree> parseTrees;
+	private ParseForest forest;
 	
 	/**
 	 * Creates a new parse for the given seed category and 
@@ -55,6 +75,16 @@ public class Parse {
 		this(seed, chart, false);
 	}
 	
+	/**
+	 * Creates a new parse for the given seed category whose chart is a view
+	 * of the specified items.
+	 * @see Chart#Chart(ItemChart)
+	 */
+	Parse(Category seed, ItemChart items) {
+		this(seed, new Chart(items), false);
+		this.items = items;
+	}
+	
 	/**
 	 * Creates a new parse for the given seed category,
 	 * chart, and error status.
@@ -78,6 +108,16 @@ public class Parse {
 		return Collections.unmodifiableList(tokens);
 	}
 	
+	/**
+	 * Gets the statistics of this parse: how many items were added to each
+	 * Earley set, and how long parsing took.
+	 * @return The statistics taken when the parse was finished, or
+	 * <code>null</code> if it was not made by a parser.
+	 */
+	public ParseStatistics getStatistics() {
+		return statistics;
+	}
+	
 	/**
 	 * Gets the seed category for this parse.
 	 * @return The seed category.
@@ -94,7 +134,42 @@ public class Parse {
 		return chart;
 	}
 	
+	/**
+	 * Gets the parse forest representing every derivation found during
+	 * this parse.
+	 * @return The parse forest, or <code>null</code> if this parse was not
+	 * produced by an {@link EarleyParser Earley parser}.
+	 * @see ParseForest#getRoot()
+	 */
+	public ParseForest getForest() {
+		if(forest == null && items != null) {
+			forest = new ParseForest(items, seed, tokens.size());
+		}
+		
+		return forest;
+	}
+	
 	Set<Edge> getCompletedEdges(Category category, int origin, int index) {
+		if(chart.items != null) { // no need to create every edge at index
+			ItemChart ic = chart.items;
+			int c = ic.grammar.getCategoryId(category);
+			EarleySet set = ic.get(index);
+			if(c < 0 || set == null) {
+				return Collections.emptySet();
+			}
+			
+			Set<Edge> es = new HashSet<Edge>();
+			for(int item = 0; item < set.size; item++) {
+				int d = set.dotted[item];
+				if(set.origin[item] == origin && ic.grammar.dottedNext[d] < 0
+						&& ic.grammar.left[ic.grammar.dottedRule[d]] == c) {
+					es.add(ic.edge(index, item));
+				}
+			}
+			
+			return es;
+		}
+		
 		Set<Edge> edges = chart.edgeSets.get(index);
 		if(edges == null || edges.isEmpty()) { // any edges at this index?
 			return Collections.emptySet();
@@ -131,6 +206,12 @@ public class Parse {
 	 * is returned if an error occurred during the parse.
 	 */
 	public Status getStatus() {
+		if(!error && chart.items != null) { // no need to create the edges
+			ItemChart ic = chart.items;
+			return (ic.findPassive(tokens.size(), ic.grammar.getCategoryId(START),
+				0) < 0) ? Status.REJECT : Status.ACCEPT;
+		}
+		
 		return error
 			? Status.ERROR : getCompletedEdges(START, 0, tokens.size()).isEmpty()
 			? Status.REJECT : Status.ACCEPT;
@@ -163,6 +244,89 @@ public class Parse {
 		return parseTrees;
 	}
 	
+	/**
+	 * Gets an iterator over the completed parse trees for the seed category
+	 * spanning the entire input string. Unlike {@link #getParseTrees()},
+	 * trees are built one at a time as the iterator is advanced.
+	 * @return An iterator over the trees that {@link #getParseTrees()}
+	 * contains, in the same order. The iterator does not support removal.
+	 * @see ParseForest#parseTreeIterator(ForestNode)
+	 */
+	public Iterator<ParseTree> parseTreeIterator() {
+		if(parseTrees == null && !error && getForest() != null) {
+			ForestNode root = forest.getRoot();
+			if(root != null) {
+				return forest.parseTreeIterator(root);
+			}
+		}
+		
+		return Collections.unmodifiableSet(getParseTrees()).iterator();
+	}
+	
+	/**
+	 * Gets a stream of the completed parse trees for the seed category
+	 * spanning the entire input string. Trees are built as the stream is
+	 * consumed, so for example
+	 * <blockquote><code>parse.parseTrees().limit(10)</code></blockquote>
+	 * only builds ten trees, however ambiguous the parse.
+	 * @return A sequential, ordered stream of distinct parse trees.
+	 * @see #parseTreeIterator()
+	 */
+	public Stream<ParseTree> parseTrees() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+			parseTreeIterator(), Spliterator.ORDERED | Spliterator.DISTINCT
+				| Spliterator.NONNULL), false);
+	}
+	
+	/**
+	 * Gets at most the specified number of completed parse trees for the
+	 * seed category spanning the entire input string.
+	 * @param limit The maximum number of trees to build.
+	 * @return A set containing the first <code>limit</code> trees that
+	 * {@link #parseTreeIterator()} returns, or fewer if there are not that
+	 * many.
+	 * @throws IllegalArgumentException If <code>limit &lt; 0</code>.
+	 */
+	public Set<ParseTree> getParseTrees(int limit) {
+		if(limit < 0) {
+			throw new IllegalArgumentException("negative limit: " + limit);
+		}
+		
+		Set<ParseTree> trees = new LinkedHashSet<ParseTree>();
+		Iterator<ParseTree> i = parseTreeIterator();
+		while(trees.size() < limit && i.hasNext()) {
+			trees.add(i.next());
+		}
+		
+		return trees;
+	}
+	
+	/**
+	 * Gets the first completed parse tree for the seed category spanning the
+	 * entire input string. Only that tree is built.
+	 * @return The first tree {@link #parseTreeIterator()} returns, or
+	 * <code>null</code> if there are none.
+	 */
+	public ParseTree getParseTree() {
+		Iterator<ParseTree> i = parseTreeIterator();
+		return i.hasNext() ? i.next() : null;
+	}
+	
+	/**
+	 * Counts the completed parse trees for the seed category spanning the
+	 * entire input string. For a parse produced by a parser, the trees are
+	 * counted in its {@link #getForest() forest} without building them.
+	 * @return The number of trees {@link #getParseTrees()} would contain.
+	 * @see ParseForest#countParseTrees()
+	 */
+	public BigInteger countParseTrees() {
+		if(parseTrees == null && !error && getForest() != null) {
+			return forest.countParseTrees();
+		}
+		
+		return BigInteger.valueOf(getParseTrees().size());
+	}
+	
 	/**
 	 * Gets a parse tree corresponding to the given edge.
 	 * @param edge The edge to find a parse tree for.
@@ -225,6 +389,13 @@ public class Parse {
 			throw new NullPointerException("null category");
 		}
 		
+		ParseForest f = getForest();
+		if(f != null) {
+			ForestNode node = f.getNode(category, origin, index);
+			return (node == null) ? new HashSet<ParseTree>()
+				: f.getParseTrees(node);
+		}
+		
 		Set<ParseTree> trees = new HashSet<ParseTree>();
 		
 		for(Edge e : getCompletedEdges(category, origin, index)) {
@@ -269,7 +440,8 @@ public class Parse {
 	 * @return &quot;<code>ACCEPT: S -&gt; [the, boy, left] (1)</code>&quot; for an
 	 * {@link #getStatus() accepted} parse of &quot;the boy left&quot; with
 	 * seed category <code>S</code> and one possible {@link #getParseTrees parse
-	 * tree}.
+	 * tree}. The trees are {@link #countParseTrees() counted} rather than
+	 * built.
 	 */
 	@Override
 	public String toString() {
@@ -283,7 +455,7 @@ public class Parse {
 		
 		if(status.equals(Status.ACCEPT)) {
 			sb.append(" (");
-			sb.append(getParseTrees().size());
+			sb.append(countParseTrees());
 			sb.append(')');
 		}
 		
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * A JDK Flight Recorder event for each {@link Parse parse}, spanning the
+ * time from when it was started until it was
+ * {@link IncrementalParse#finish() finished}. It is disabled by default, and
+ * recorded once it is enabled by its name, <code>org.xproc.pep.Parse</code>,
+ * in the settings of a recording, optionally with a threshold so that only
+ * slow parses are recorded. While it is disabled, a parse only tests
+ * whether it is enabled once, when it is started.
+ * @see PhaseFlightEvent
+ */
+@Name("org.xproc.pep.Parse")
+@Label("Parse")
+@jdk.jfr.Category("Pep")
+@Description("A parse by an Earley parser, from when it was started until it"
+	+ " was finished")
+@Enabled(false)
+@StackTrace(false)
+final class ParseFlightEvent extends Event {
+	@Label("Grammar")
+	String grammar;
+
+	@Label("Seed")
+	String seed;
+
+	@Label("Tokens")
+	int tokens;
+
+	@Label("Items")
+	@Description("The number of items in all of the Earley sets, or -1 if the"
+		+ " parse only recognized its tokens")
+	long items;
+
+	@Label("Status")
+	String status;
+
+	/**
+	 * Begins an event for a parse that is being started.
+	 * @return The event, or <code>null</code> if it is not enabled.
+	 */
+	static ParseFlightEvent start() {
+		ParseFlightEvent event = new ParseFlightEvent();
+		if(!event.isEnabled()) {
+			return null;
+		}
+
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends this event for a parse that was just finished, and records it if
+	 * it lasted at least the threshold.
+	 */
+	void finish(IncrementalParse session, Status status) {
+		end();
+		if(shouldCommit()) {
+			Parse parse = session.parse;
+			grammar = session.items.grammar.grammar.getName();
+			seed = (parse.seed == null) ? null : parse.seed.getName();
+			tokens = session.index;
+			items = (parse.statistics == null)
+				? -1L : parse.statistics.getItems();
+			this.status = status.name();
+			commit();
+		}
+	}
+}
@@ -0,0 +1,603 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ * A shared packed parse forest (SPPF) that compactly represents every
+ * derivation an {@link EarleyParser Earley parser} found.
+ * <p>
+ * The parser only adds each Earley item to its chart once, no matter how many
+ * ways it can be derived; the alternative derivations of an item are
+ * recorded alongside it as {@link PackedNode packed nodes}. The forest is a
+ * view of those items, so the number of {@link ForestNode nodes} stays
+ * polynomial in the length of the input even when the number of
+ * {@link ParseTree parse trees} is exponential.
+ * <p>
+ * The {@link #getRoot() root} of a forest is the symbol node for the parse's
+ * {@link Parse#getSeed() seed category} spanning the whole input. Any other
+ * symbol node can be retrieved using
+ * {@link #getNode(Category, int, int)}.
+ * @see Parse#getForest()
+ * @see ForestNode
+ */
+public class ParseForest {
+	final ItemChart items;
+	final CompiledGrammar grammar;
+	final Category seed;
+	final int length;
+
+	/**
+	 * Creates a parse forest over the specified items.
+	 * @param items The items filled in by the parser.
+	 * @param seed The seed category of the parse.
+	 * @param length The number of tokens parsed.
+	 */
+	ParseForest(ItemChart items, Category seed, int length) {
+		this.items = items;
+		this.grammar = items.grammar;
+		this.seed = seed;
+		this.length = length;
+	}
+
+	/**
+	 * Gets the root of this forest.
+	 * @return The symbol node for the seed category spanning the entire
+	 * input, or <code>null</code> if the input was not recognized.
+	 */
+	public ForestNode getRoot() {
+		return getNode(seed, 0, length);
+	}
+
+	/**
+	 * Gets the symbol node for a category over a span of the input.
+	 * @param category The category of the node.
+	 * @param origin The string index where the span begins.
+	 * @param index The string index where the span ends.
+	 * @return The symbol node, or <code>null</code> if the category was not
+	 * derived over the span.
+	 * @throws NullPointerException If <code>category</code> is
+	 * <code>null</code>.
+	 */
+	public ForestNode getNode(Category category, int origin, int index) {
+		if(category == null) {
+			throw new NullPointerException("null category");
+		}
+
+		int c = grammar.getCategoryId(category);
+		if(c < 0) {
+			return null;
+		}
+
+		if(grammar.terminal[c]) {
+			return (index == origin + 1 && scanned(c, index))
+				? new ForestNode(this, c, -1, origin, index) : null;
+		}
+
+		return (items.findPassive(index, c, origin) < 0) ? null
+			: new ForestNode(this, c, -1, origin, index);
+	}
+
+	/**
+	 * Tests whether a terminal category was scanned just before the specified
+	 * index.
+	 */
+	private boolean scanned(int terminal, int index) {
+		EarleySet set = items.peek(index); // scanned items are never deferred
+		if(set != null) {
+			for(int item = 0; item < set.size; item++) {
+				int d = set.dotted[item];
+				if(d > grammar.dottedBase[grammar.dottedRule[d]]
+						&& grammar.dottedNext[d - 1] == terminal) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Counts the parse trees for the {@link #getRoot() root} of this forest.
+	 * The count is computed from the forest without building any trees.
+	 * @return The number of trees that {@link #parseTreeIterator(ForestNode)}
+	 * would produce for the root, or {@link BigInteger#ZERO} if the input
+	 * was not recognized. Derivations that contain a node within itself
+	 * (possible only with cyclic grammars) are not counted.
+	 */
+	public BigInteger countParseTrees() {
+		ForestNode root = getRoot();
+		return (root == null) ? BigInteger.ZERO : countParseTrees(root);
+	}
+
+	/**
+	 * Counts the parse trees rooted at a node of this forest.
+	 * <p>
+	 * Like {@link #parseTreeIterator(ForestNode)}, this skips derivations in
+	 * which a symbol node occurs within itself, so the count of a node in a
+	 * cycle depends on the symbol nodes above it. A node's count is only kept
+	 * for reuse if counting it reached no symbol node still being counted,
+	 * itself included; in a forest without cycles that is every count, and
+	 * each node is counted once.
+	 * @param node The node to count trees for.
+	 * @return The number of distinct derivations of <code>node</code>.
+	 * @throws NullPointerException If <code>node</code> is
+	 * <code>null</code>.
+	 * @see #countParseTrees()
+	 */
+	public BigInteger countParseTrees(ForestNode node) {
+		if(node == null) {
+			throw new NullPointerException("null node");
+		}
+
+		// iterative, as forests for long inputs can be very deep
+		Map<ForestNode, BigInteger> counts
+			= new HashMap<ForestNode, BigInteger>(); // independent of the path
+		Map<ForestNode, Integer> path
+			= new HashMap<ForestNode, Integer>(); // symbol nodes, by depth
+		Deque<Count> stack = new ArrayDeque<Count>();
+		Count result = count(node, counts, path, stack);
+		while(!stack.isEmpty()) {
+			Count c = stack.peek();
+			if(c.packed < c.node.getPackedNodes().size()) {
+				PackedNode p = c.node.getPackedNodes().get(c.packed);
+				Count child = count(c.leftNext ? p.getLeft() : p.getRight(),
+					counts, path, stack);
+				if(child != null) { // otherwise pushed, counted first
+					c.add(child);
+				}
+				continue;
+			}
+
+			stack.pop();
+			if(c.node.isSymbol()) {
+				path.remove(c.node);
+			}
+			if(c.low == Integer.MAX_VALUE) { // no cycle below it
+				counts.put(c.node, c.count);
+			}
+
+			if(stack.isEmpty()) {
+				result = c;
+			}
+			else {
+				stack.peek().add(c);
+			}
+		}
+
+		return result.count;
+	}
+
+	/**
+	 * Counts a node right away if it is a terminal, already counted, or on
+	 * the path, and otherwise pushes it to be counted.
+	 * @return The count, or <code>null</code> if the node was pushed.
+	 */
+	private static Count count(ForestNode node,
+			Map<ForestNode, BigInteger> counts, Map<ForestNode, Integer> path,
+			Deque<Count> stack) {
+		if(node == null || node.isTerminal()) {
+			return new Count(null, BigInteger.ONE, Integer.MAX_VALUE);
+		}
+
+		BigInteger count = counts.get(node);
+		if(count != null) {
+			return new Count(null, count, Integer.MAX_VALUE);
+		}
+
+		Integer depth = path.get(node);
+		if(depth != null) { // cyclic derivation
+			return new Count(null, BigInteger.ZERO, depth.intValue());
+		}
+
+		if(node.isSymbol()) {
+			path.put(node, path.size());
+		}
+		stack.push(new Count(node, BigInteger.ZERO, Integer.MAX_VALUE));
+		return null;
+	}
+
+	/**
+	 * The number of trees of a node, summed over its packed nodes as they
+	 * are counted.
+	 */
+	private static class Count {
+		final ForestNode node;
+		BigInteger count, leftCount;
+		int low; // shallowest depth on the path this count reached
+		int packed; // the packed node being counted
+		boolean leftNext = true; // whether its left child is counted next
+
+		Count(ForestNode node, BigInteger count, int low) {
+			this.node = node;
+			this.count = count;
+			this.low = low;
+		}
+
+		/**
+		 * Adds the count of the next child of the packed node being counted.
+		 */
+		void add(Count child) {
+			low = Math.min(low, child.low);
+			if(leftNext) {
+				leftCount = child.count;
+				leftNext = false;
+			}
+			else {
+				count = count.add(leftCount.multiply(child.count));
+				packed++;
+				leftNext = true;
+			}
+		}
+	}
+
+	/**
+	 * Gets an iterator over the parse trees rooted at a symbol node. Trees
+	 * are built one at a time as the iterator is advanced, so taking the
+	 * first few trees of a highly ambiguous forest is cheap. Derivations that
+	 * would contain the same symbol node more than once along a path are
+	 * skipped, so iteration terminates even for cyclic grammars. As for
+	 * {@link ParseTree#newParseTree(Edge)}, {@link Category#START} is not
+	 * included at the root.
+	 * @param node The symbol node to get trees for.
+	 * @return An iterator over distinct parse trees, which does not support
+	 * removal.
+	 * @throws NullPointerException If <code>node</code> is
+	 * <code>null</code>.
+	 * @throws IllegalArgumentException If <code>node</code> is not a
+	 * {@link ForestNode#isSymbol() symbol node}.
+	 */
+	public Iterator<ParseTree> parseTreeIterator(ForestNode node) {
+		if(node == null) {
+			throw new NullPointerException("null node");
+		}
+		if(!node.isSymbol()) {
+			throw new IllegalArgumentException("not a symbol node: " + node);
+		}
+
+		final Iterator<ParseTree> shapes;
+		if(node.symbol == 0) { // START, use the seed below it
+			List<ForestNode> seeds = new ArrayList<ForestNode>();
+			for(PackedNode packed : node.getPackedNodes()) {
+				seeds.add(packed.getRight());
+			}
+
+			shapes = new Concatenation(seeds.iterator(), null);
+		}
+		else {
+			shapes = trees(node, null);
+		}
+
+		return new Iterator<ParseTree>() {
+			@Override
+			public boolean hasNext() {
+				return shapes.hasNext();
+			}
+
+			@Override
+			public ParseTree next() {
+				// shapes share subtrees, so give each tree its own nodes
+				return copy(shapes.next(), null);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Gets a stream of the parse trees rooted at a symbol node.
+	 * @see #parseTreeIterator(ForestNode)
+	 */
+	public Stream<ParseTree> parseTrees(ForestNode node) {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+			parseTreeIterator(node), Spliterator.ORDERED
+				| Spliterator.DISTINCT | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * Builds every parse tree rooted at a symbol node.
+	 * @see #parseTreeIterator(ForestNode)
+	 */
+	Set<ParseTree> getParseTrees(ForestNode node) {
+		Set<ParseTree> trees = new LinkedHashSet<ParseTree>();
+		Iterator<ParseTree> i = parseTreeIterator(node);
+		while(i.hasNext()) {
+			trees.add(i.next());
+		}
+
+		return trees;
+	}
+
+	/**
+	 * Gets the trees of a symbol node, without parents and possibly sharing
+	 * subtrees with each other.
+	 */
+	private Iterator<ParseTree> trees(ForestNode node, Path path) {
+		if(node.isTerminal()) {
+			return Collections.singletonList(
+				new ParseTree(node.getCategory(), null, null)).iterator();
+		}
+
+		for(Path p = path; p != null; p = p.parent) {
+			if(p.node.equals(node)) { // cyclic derivation
+				return Collections.<ParseTree>emptyList().iterator();
+			}
+		}
+
+		return new SymbolTrees(node, new Path(node, path));
+	}
+
+	/**
+	 * The symbol nodes from a tree's root down to the node being expanded.
+	 */
+	private static class Path {
+		final ForestNode node;
+		final Path parent;
+
+		Path(ForestNode node, Path parent) {
+			this.node = node;
+			this.parent = parent;
+		}
+	}
+
+	/**
+	 * Base for iterators that find their next element on demand.
+	 */
+	private static abstract class Lookahead<T> implements Iterator<T> {
+		private T next;
+
+		abstract T advance();
+
+		@Override
+		public boolean hasNext() {
+			if(next == null) {
+				next = advance();
+			}
+
+			return (next != null);
+		}
+
+		@Override
+		public T next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			T t = next;
+			next = null;
+			return t;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * The trees of each symbol node in turn.
+	 */
+	private class Concatenation extends Lookahead<ParseTree> {
+		final Iterator<ForestNode> nodes;
+		final Path path;
+		Iterator<ParseTree> current;
+
+		Concatenation(Iterator<ForestNode> nodes, Path path) {
+			this.nodes = nodes;
+			this.path = path;
+		}
+
+		@Override
+		ParseTree advance() {
+			while(current == null || !current.hasNext()) {
+				if(!nodes.hasNext()) {
+					return null;
+				}
+
+				current = trees(nodes.next(), path);
+			}
+
+			return current.next();
+		}
+	}
+
+	/**
+	 * The trees of a non-terminal symbol node: for each packed node, for
+	 * each sequence of children it expands to, every combination of the
+	 * children's trees.
+	 */
+	private class SymbolTrees extends Lookahead<ParseTree> {
+		final Category category;
+		final Path path;
+		final Iterator<PackedNode> packed;
+		Iterator<ForestNode[]> sequences;
+		Iterator<ParseTree> combinations;
+
+		SymbolTrees(ForestNode node, Path path) {
+			this.category = node.getCategory();
+			this.path = path;
+			packed = node.getPackedNodes().iterator();
+		}
+
+		@Override
+		ParseTree advance() {
+			while(combinations == null || !combinations.hasNext()) {
+				if(sequences != null && sequences.hasNext()) {
+					combinations = new Combinations(category,
+						sequences.next(), path);
+				}
+				else if(packed.hasNext()) {
+					sequences = new Sequences(packed.next());
+				}
+				else {
+					return null;
+				}
+			}
+
+			return combinations.next();
+		}
+	}
+
+	/**
+	 * The sequences of symbol nodes that a packed node expands to, found by
+	 * following its left children through intermediate nodes.
+	 */
+	private static class Sequences extends Lookahead<ForestNode[]> {
+		final ForestNode right;
+		final int length; // the dot position of the packed node
+		final Iterator<PackedNode> left;
+		Iterator<ForestNode[]> prefixes;
+		boolean done;
+
+		Sequences(PackedNode packed) {
+			right = packed.getRight();
+			ForestNode l = packed.getLeft();
+			left = (l == null) ? null : l.getPackedNodes().iterator();
+
+			length = packed.position();
+		}
+
+		@Override
+		ForestNode[] advance() {
+			if(left == null) { // at most one child
+				if(done) {
+					return null;
+				}
+
+				done = true;
+				return (right == null) ? new ForestNode[0]
+					: new ForestNode[] {right};
+			}
+
+			while(prefixes == null || !prefixes.hasNext()) {
+				if(!left.hasNext()) {
+					return null;
+				}
+
+				prefixes = new Sequences(left.next());
+			}
+
+			ForestNode[] sequence = Arrays.copyOf(prefixes.next(), length);
+			sequence[length - 1] = right;
+			return sequence;
+		}
+	}
+
+	/**
+	 * Every combination of the trees of a sequence of children, in the
+	 * order of an odometer whose last child varies fastest.
+	 */
+	private class Combinations extends Lookahead<ParseTree> {
+		final Category category;
+		final ForestNode[] children;
+		final Path path;
+		final ParseTree[] current;
+		final List<Iterator<ParseTree>> iterators;
+		boolean started, done;
+
+		Combinations(Category category, ForestNode[] children, Path path) {
+			this.category = category;
+			this.children = children;
+			this.path = path;
+			current = new ParseTree[children.length];
+			iterators = new ArrayList<Iterator<ParseTree>>(
+				Collections.<Iterator<ParseTree>>nCopies(children.length, null));
+		}
+
+		@Override
+		ParseTree advance() {
+			if(done) {
+				return null;
+			}
+
+			int i = 0;
+			if(started) { // find the last child with another tree
+				i = children.length - 1;
+				while(i >= 0 && !iterators.get(i).hasNext()) {
+					i--;
+				}
+				if(i < 0) {
+					done = true;
+					return null;
+				}
+
+				current[i] = iterators.get(i).next();
+				i++;
+			}
+
+			started = true;
+			for(; i < children.length; i++) { // restart the following ones
+				Iterator<ParseTree> it = trees(children[i], path);
+				if(!it.hasNext()) { // only possible the first time
+					done = true;
+					return null;
+				}
+
+				iterators.set(i, it);
+				current[i] = it.next();
+			}
+
+			if(children.length == 0) { // the one empty combination
+				done = true;
+				return new ParseTree(category, null, null);
+			}
+
+			return new ParseTree(category, null, current.clone());
+		}
+	}
+
+	/**
+	 * Copies a parse tree so that it can be attached to a new parent.
+	 */
+	static ParseTree copy(ParseTree tree, ParseTree parent) {
+		ParseTree copy = new ParseTree(tree.node, parent,
+			(tree.children == null) ? null
+				: new ParseTree[tree.children.length]);
+		if(tree.children != null) {
+			for(int i = 0; i < tree.children.length; i++) {
+				copy.children[i] = copy(tree.children[i], copy);
+			}
+		}
+
+		return copy;
+	}
+
+	/**
+	 * Gets a string representation of this forest.
+	 * @return A string naming the forest's {@link #getRoot() root}.
+	 */
+	@Override
+	public String toString() {
+		ForestNode root = getRoot();
+		return "[" + getClass().getSimpleName() + ": "
+			+ ((root == null) ? seed + " (none)" : root.toString()) + "]";
+	}
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+
+/**
+ * How much work a {@link Parse parse} took: how many items were added to
+ * each Earley set, and by what, how big the sets got, and how long it took.
+ * <p>
+ * Counting costs nothing while parsing, since how an item was added follows
+ * from its dotted rule: one with its dot at the start was predicted, one
+ * with its dot after a terminal was scanned, and one with its dot after a
+ * nonterminal was completed. The sets are counted once, when the parse is
+ * finished. Items whose completion was deferred by
+ * {@link ParserOption#MEMOIZE_RIGHT_RECURSION memoization} are not
+ * counted, since they are only added if the chart is read.
+ * <p>
+ * The elapsed time of a parse, from when it was started until it was
+ * finished, is always measured. The time spent in each {@link Phase phase}
+ * is only measured if {@link ParserOption#TIME_PHASES} is set, since that
+ * takes several readings of the clocks per token.
+ * @see Parse#getStatistics()
+ */
+public class ParseStatistics {
+	/**
+	 * The phases of Earley parsing, whose time can be
+	 * {@link ParserOption#TIME_PHASES measured}.
+	 */
+	public enum Phase {
+		/**
+		 * Adding the items for the rules of the categories the items of a set
+		 * wait for.
+		 */
+		PREDICT,
+
+		/**
+		 * Advancing the items that wait for a terminal the next token
+		 * matches, along with predicting the preterminal rules for it if
+		 * {@link ParserOption#PREDICT_FOR_PRETERMINALS} is not set.
+		 */
+		SCAN,
+
+		/**
+		 * Advancing the items that wait for a category that was completed.
+		 */
+		COMPLETE
+	}
+
+	static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	final int[] predicted, scanned, completed; // by position
+	final int peakSize, peakPosition;
+	final long elapsed;
+	final long[] wall, cpu; // by phase, or null if not measured
+
+	/**
+	 * Counts the items of a parse's sets, from the first to
+	 * <code>last</code>.
+	 * @param wall The wall clock time spent in each phase, or
+	 * <code>null</code>.
+	 * @param cpu The CPU time spent in each phase, or <code>null</code>.
+	 */
+	ParseStatistics(ItemChart items, int last, long elapsed, long[] wall,
+			long[] cpu) {
+		int positions = last + 1;
+		predicted = new int[positions];
+		scanned = new int[positions];
+		completed = new int[positions];
+		this.elapsed = elapsed;
+		this.wall = wall;
+		this.cpu = cpu;
+
+		CompiledGrammar cg = (items == null) ? null : items.grammar;
+		int peak = 0, at = 0;
+		for(int p = 0; p < positions && cg != null; p++) {
+			EarleySet set = items.peek(p);
+			if(set == null) {
+				continue;
+			}
+			if(set.size > peak) {
+				peak = set.size;
+				at = p;
+			}
+
+			for(int item = 0; item < set.size; item++) {
+				int d = set.dotted[item];
+				if(d == cg.dottedBase[cg.dottedRule[d]]) {
+					predicted[p]++;
+				}
+				else if(cg.terminal[cg.dottedNext[d - 1]]) {
+					scanned[p]++;
+				}
+				else {
+					completed[p]++;
+				}
+			}
+		}
+
+		peakSize = peak;
+		peakPosition = at;
+	}
+
+	/**
+	 * Reads the CPU time of the current thread.
+	 * @return The time in nanoseconds, or <code>-1</code> if it cannot be
+	 * measured.
+	 */
+	static long cpuTime() {
+		return THREADS.isCurrentThreadCpuTimeSupported()
+			? THREADS.getCurrentThreadCpuTime() : -1L;
+	}
+
+	/**
+	 * Gets the number of string positions, one more than the number of
+	 * tokens.
+	 */
+	public int getPositions() {
+		return predicted.length;
+	}
+
+	/**
+	 * Gets the number of items predicted at a string position.
+	 * @throws IndexOutOfBoundsException If <code>position</code> is not
+	 * between <code>0</code> and {@link #getPositions()}, exclusive.
+	 */
+	public int getPredicted(int position) {
+		return predicted[position];
+	}
+
+	/**
+	 * Gets the number of items that reached a string position by scanning the
+	 * token before it.
+	 * @throws IndexOutOfBoundsException If <code>position</code> is not
+	 * between <code>0</code> and {@link #getPositions()}, exclusive.
+	 */
+	public int getScanned(int position) {
+		return scanned[position];
+	}
+
+	/**
+	 * Gets the number of items completed at a string position.
+	 * @throws IndexOutOfBoundsException If <code>position</code> is not
+	 * between <code>0</code> and {@link #getPositions()}, exclusive.
+	 */
+	public int getCompleted(int position) {
+		return completed[position];
+	}
+
+	/**
+	 * Gets the number of items in the Earley set at a string position.
+	 * @throws IndexOutOfBoundsException If <code>position</code> is not
+	 * between <code>0</code> and {@link #getPositions()}, exclusive.
+	 */
+	public int getItems(int position) {
+		return predicted[position] + scanned[position] + completed[position];
+	}
+
+	/**
+	 * Gets the number of items in all of the Earley sets.
+	 */
+	public long getItems() {
+		long total = 0L;
+		for(int p = 0; p < predicted.length; p++) {
+			total += getItems(p);
+		}
+
+		return total;
+	}
+
+	/**
+	 * Gets the number of items in the largest Earley set.
+	 */
+	public int getPeakSetSize() {
+		return peakSize;
+	}
+
+	/**
+	 * Gets the string position of the largest Earley set, the first one if
+	 * there are several.
+	 */
+	public int getPeakPosition() {
+		return peakPosition;
+	}
+
+	/**
+	 * Gets the time from when the parse was started until it was finished,
+	 * in nanoseconds. For an {@link IncrementalParse incremental parse}, this
+	 * includes the time spent waiting for tokens.
+	 */
+	public long getElapsedNanos() {
+		return elapsed;
+	}
+
+	/**
+	 * Gets the wall clock time spent in a phase, in nanoseconds.
+	 * @return The time, or <code>-1</code> if
+	 * {@link ParserOption#TIME_PHASES} was not set for the parse.
+	 */
+	public long getWallNanos(Phase phase) {
+		return (wall == null) ? -1L : wall[phase.ordinal()];
+	}
+
+	/**
+	 * Gets the CPU time spent in a phase, in nanoseconds.
+	 * @return The time, or <code>-1</code> if
+	 * {@link ParserOption#TIME_PHASES} was not set for the parse or the CPU
+	 * time of threads cannot be measured.
+	 */
+	public long getCpuNanos(Phase phase) {
+		return (cpu == null) ? -1L : cpu[phase.ordinal()];
+	}
+
+	/**
+	 * Gets a string representation of these statistics, with the totals
+	 * rather than the counts at each position.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(getItems());
+		sb.append(" items in ");
+		sb.append(getPositions());
+		sb.append(" sets (largest ");
+		sb.append(peakSize);
+		sb.append(" at ");
+		sb.append(peakPosition);
+		sb.append(") in ");
+		sb.append(String.format("%.3f ms", elapsed / 1e6));
+
+		if(wall != null) {
+			for(Phase phase : Phase.values()) {
+				sb.append(", ");
+				sb.append(phase.name().toLowerCase());
+				sb.append(String.format(" %.3f ms", wall[phase.ordinal()] / 1e6));
+				if(cpu != null) {
+					sb.append(String.format(" (%.3f ms CPU)",
+						cpu[phase.ordinal()] / 1e6));
+				}
+			}
+		}
+
+		return sb.toString();
+	}
+}
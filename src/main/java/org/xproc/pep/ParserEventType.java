@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+
+/**
+ * The kinds of notification a {@link ParserListener listener} can receive,
+ * one for each of its methods. A listener tells which ones it wants by its
+ * {@link ParserListener#getEventTypes() event types}.
+ * @see ParserListener
+ */
+public enum ParserEventType {
+	/**
+	 * @see ParserListener#optionSet(ParserOptionEvent)
+	 */
+	OPTION_SET,
+
+	/**
+	 * @see ParserListener#parserSeeded(EdgeEvent)
+	 */
+	PARSER_SEEDED,
+
+	/**
+	 * @see ParserListener#edgePredicted(EdgeEvent)
+	 */
+	EDGE_PREDICTED,
+
+	/**
+	 * @see ParserListener#edgeScanned(EdgeEvent)
+	 */
+	EDGE_SCANNED,
+
+	/**
+	 * @see ParserListener#tokenConsumed(String)
+	 */
+	TOKEN_CONSUMED,
+
+	/**
+	 * @see ParserListener#edgeCompleted(EdgeEvent)
+	 */
+	EDGE_COMPLETED,
+
+	/**
+	 * @see ParserListener#parseComplete(ParseEvent)
+	 */
+	PARSE_COMPLETE,
+
+	/**
+	 * @see ParserListener#parseMessage(ParseEvent, String)
+	 */
+	PARSE_MESSAGE,
+
+	/**
+	 * @see ParserListener#parseError(ParseErrorEvent)
+	 */
+	PARSE_ERROR;
+
+	static final Set<ParserEventType> ALL
+		= Collections.unmodifiableSet(EnumSet.allOf(ParserEventType.class));
+
+	/**
+	 * The kinds of notification that carry an {@link Edge edge}, which has
+	 * to be built from the parse's items to be handed out.
+	 */
+	static final Set<ParserEventType> EDGES = Collections.unmodifiableSet(
+		EnumSet.of(PARSER_SEEDED, EDGE_PREDICTED, EDGE_SCANNED, EDGE_COMPLETED));
+}
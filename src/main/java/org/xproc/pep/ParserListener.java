@@ -11,6 +11,7 @@
 package org.xproc.pep;
 
 import java.util.EventListener;
+import java.util.Set;
 
 
 /**
@@ -20,12 +21,33 @@ import java.util.EventListener;
  * in a parse.
  * <p>
  * A listener can be specified for an Earley parser when the parser is 
- * created.
+ * created. A listener that only cares about some of these notifications
+ * should say which by its {@link #getEventTypes() event types}, since an
+ * event is created for every edge added to the chart otherwise.
  * @author <a href="http://www.ling.osu.edu/~scott/">Scott Martin</a>
  * @version $LastChangedRevision: 1799 $
  * @see EarleyParser#EarleyParser(Grammar, ParserListener)
  */
 public interface ParserListener extends EventListener {
+	/**
+	 * Gets the kinds of events this listener is to be notified of. A parse
+	 * reads them once, when it starts; the other methods of this listener are
+	 * not called for the events left out, and those events are not created.
+	 * <p>
+	 * A parse that has to notify its listener of no
+	 * {@link ParserEventType#EDGE_COMPLETED completed} edges can
+	 * {@link ParserOption#MEMOIZE_RIGHT_RECURSION memoize right recursion},
+	 * and {@link EarleyParser#recognize(Iterable, Category) recognition}
+	 * keeps no chart unless the listener wants edges or the
+	 * {@link ParserEventType#PARSE_COMPLETE completed parse}. If
+	 * {@link ParserEventType#PARSE_ERROR parse errors} are left out, they are
+	 * thrown, as though there were no listener.
+	 * @return The event types, all of them by default.
+	 */
+	public default Set<ParserEventType> getEventTypes() {
+		return ParserEventType.ALL;
+	}
+	
 	/**
 	 * Lets the listener know that an option was set on an Earley parser.
 	 * @param optionEvent The event containing the newly set option and its
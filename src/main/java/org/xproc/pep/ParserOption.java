@@ -53,7 +53,52 @@ public enum ParserOption {
 	 * <p>
 	 * Default value: {@link Boolean#FALSE}.
 	 */
-	PREDICT_FOR_PRETERMINALS(Boolean.FALSE);
+	PREDICT_FOR_PRETERMINALS(Boolean.FALSE),
+	
+	/**
+	 * Whether the Earley parser should memoize deterministic reduction paths
+	 * using Joop Leo's <em>transitive items</em>. With right-recursive rules
+	 * like <code>L -&gt; x L</code>, every completion of <code>L</code> would
+	 * otherwise complete the whole chain of <code>L</code> items begun so far,
+	 * making parsing quadratic in the length of the input. If this option is
+	 * <code>true</code>, the parser only adds the topmost item of such a chain
+	 * and the items below it are filled in when the chart or
+	 * {@link Parse#getForest() parse forest} is first read, so that right
+	 * recursion is recognized in linear time.
+	 * <p>
+	 * Memoization is not used while a {@link ChartListener chart listener}
+	 * is set, or a {@link ParserListener listener} that wants to be notified
+	 * of edges, since listeners are notified of every edge as it is added.
+	 * <p>
+	 * Default value: {@link Boolean#TRUE}.
+	 */
+	MEMOIZE_RIGHT_RECURSION(Boolean.TRUE),
+	
+	/**
+	 * Whether the Earley parser should look at the next input token before
+	 * making predictions. If this is <code>true</code>, a rule is only
+	 * predicted if the next token matches a terminal in the
+	 * {@link Grammar#getFirstSet(Category) FIRST set} of its right side, or
+	 * if its right side can derive the empty string. For example, with rules
+	 * <code>NP -&gt; Det N</code> and <code>NP -&gt; Pro</code>, only the
+	 * first is predicted before the token <code>the</code>. Predictions that
+	 * could never be used are left out of the chart, but every parse is still
+	 * found.
+	 * <p>
+	 * Default value: {@link Boolean#FALSE}.
+	 */
+	PREDICT_WITH_LOOKAHEAD(Boolean.FALSE),
+	
+	/**
+	 * Whether the Earley parser should measure the wall clock and CPU time
+	 * it spends in each {@link ParseStatistics.Phase phase} of parsing, for
+	 * the {@link Parse#getStatistics() statistics} of every parse. This
+	 * takes several readings of the clocks for each token, so it is only
+	 * meant for finding out where the time goes.
+	 * <p>
+	 * Default value: {@link Boolean#FALSE}.
+	 */
+	TIME_PHASES(Boolean.FALSE);
 	
 	final Boolean defaultValue;
 	
@@ -10,42 +10,39 @@
  */
 package org.xproc.pep;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Properties;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.regex.Pattern;
 
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
-import javax.xml.validation.Validator;
-
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.GnuParser;
 import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.MissingOptionException;
 import org.apache.commons.cli.OptionBuilder;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
-import org.w3c.dom.Attr;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.ErrorHandler;
-import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
 /**
@@ -85,7 +82,6 @@ public class Pep implements ParserListener {
 	
 	EarleyParser earleyParser;
 	Map<ParserOption, Boolean> parserOptions;
-	long lastParseStart;
 	
 	/**
 	 * Do not allow this class to be instantiated except by its own
@@ -123,6 +119,62 @@ public class Pep implements ParserListener {
 		return earleyParser.parse(tokens, seed);
 	}
 	
+	/**
+	 * Parses many strings in parallel, printing the parses in the order of
+	 * the strings. The parser used has no listener, so only the results
+	 * are printed, followed by the statistics of the batch.
+	 * @param grammar The grammar to use in parsing.
+	 * @param inputs The strings to parse.
+	 * @param seed The category to seed the parser with.
+	 * @see BatchParser
+	 */
+	Batch parseBatch(Grammar grammar, Iterable<List<String>> inputs,
+			Category seed) throws PepException {
+		EarleyParser parser = new EarleyParser(grammar.freeze());
+		if(parserOptions != null) {
+			for(Map.Entry<ParserOption, Boolean> entry
+					: parserOptions.entrySet()) {
+				parser.setOption(entry.getKey(), entry.getValue());
+			}
+		}
+		
+		// parses are handed out as completed, but printed in order
+		final Map<Integer, Parse> waiting = new HashMap<Integer, Parse>();
+		final int[] printed = {0};
+		Batch batch = new BatchParser(parser).parseAll(inputs, seed,
+			(parse, index) -> {
+				waiting.put(index, parse);
+				for(Parse p = waiting.remove(printed[0]); p != null;
+						p = waiting.remove(printed[0])) {
+					printed[0]++;
+					Pep.print(p, Pep.V_RECOGNITION);
+					if(Pep.verbosity >= Pep.V_PARSE) {
+						Iterator<ParseTree> parseTrees = p.parseTreeIterator();
+						int count = 1;
+						while(parseTrees.hasNext()) {
+							Pep.print(count++ + ". " + parseTrees.next(),
+								Pep.V_PARSE);
+						}
+					}
+				}
+			});
+		
+		Pep.printMessage("Batch complete: " + batch, Pep.V_STATS);
+		return batch;
+	}
+	
+	/**
+	 * Gets the events to consume: those about the chart are only printed
+	 * at the chart verbosity level, so the others are left out below it.
+	 */
+	@Override
+	public Set<ParserEventType> getEventTypes() {
+		return (Pep.verbosity >= Pep.V_CHART) ? ParserEventType.ALL
+			: EnumSet.complementOf(EnumSet.of(ParserEventType.PARSER_SEEDED,
+				ParserEventType.EDGE_PREDICTED, ParserEventType.EDGE_SCANNED,
+				ParserEventType.EDGE_COMPLETED, ParserEventType.TOKEN_CONSUMED));
+	}
+	
 	/**
 	 * Consumes events generated when options are set on the parser.
 	 */
@@ -176,27 +228,24 @@ public class Pep implements ParserListener {
 	 * Consumes events generated when the parser completes a parse.
 	 */
 	public void parseComplete(ParseEvent parseEvent) {
-		long now = System.currentTimeMillis();
 		Parse parse = parseEvent.parse;
 		
 		Pep.print("", Pep.V_CHART); // only if other output above
 		Pep.print(parse, Pep.V_RECOGNITION);
 		
 		if(Pep.verbosity >= Pep.V_PARSE) {
-			Set<ParseTree> parseTrees = parse.getParseTrees();
-			if(!parseTrees.isEmpty()) {
-				int count = 1;
-				for(ParseTree pt : parseTrees) {
-					Pep.print(count++ + ". " + pt.toString(), Pep.V_PARSE);
-				}
+			Iterator<ParseTree> parseTrees = parse.parseTreeIterator();
+			int count = 1; // print trees as they are built
+			while(parseTrees.hasNext()) {
+				Pep.print(count++ + ". " + parseTrees.next().toString(),
+					Pep.V_PARSE);
 			}
 		}
 		
 		if(Pep.verbosity >= Pep.V_STATS) {
 			Pep.printMessage("", Pep.V_STATS);
-			Pep.printMessage("Parse complete: " + parse.chart.countEdges()
-					+ " edges added to chart in " + (now - lastParseStart)
-					+ " ms", Pep.V_STATS);
+			Pep.printMessage("Parse complete: " + parse.getStatistics(),
+					Pep.V_STATS);
 		}
 	}
 
@@ -328,7 +377,8 @@ public class Pep implements ParserListener {
 	 * <p>
 	 * The main work this method does, apart from tokenizing the arguments and
 	 * input tokens, is to load and parse the XML grammar file (as specified
-	 * by <code>-g</code> or <code>--grammar</code>). If any of the arguments
+	 * by <code>-g</code> or <code>--grammar</code>), or to read it if it is
+	 * a {@link BinaryGrammar binary grammar}. If any of the arguments
 	 * <code>-g</code>, <code>--grammar</code>, <code>-s</code>,
 	 * <code>--seed</code>, <code>-o</code>, <code>--option</code>, occur
 	 * with no argument following, this method prints an error notifying the
@@ -340,6 +390,12 @@ public class Pep implements ParserListener {
 	 * 	<li><code>-s|--seed &lt;seed category&gt;</code></li>
 	 * 	<li><code>-v|--verbose {verbosity level}</code></li>
 	 * 	<li><code>-o|--option &lt;OPTION_NAME=value&gt;</code></li>
+	 * 	<li><code>-b|--batch &lt;input file&gt;</code> (or <code>-</code> for
+	 * 		standard input, parses each line as a separate string, in
+	 * 		parallel, using a {@link BatchParser})</li>
+	 * 	<li><code>-c|--compile &lt;output file&gt;</code> (writes the grammar
+	 * 		as a {@link BinaryGrammar binary grammar} instead of parsing, so
+	 * 		no seed category is needed)</li>
 	 * 	<li><code>-h|--help (prints usage information)</code></li>
 	 *	<li><code>&lt;token1 ... token<em>n</em>&gt;</code>
 	 * 		(or <code>-</code> for standard input)</li>
@@ -361,7 +417,7 @@ public class Pep implements ParserListener {
 			
 			opts.addOption(OptionBuilder.withLongOpt("seed")
 					.withDescription("the seed category to parse for")
-					.hasArg().isRequired().withArgName("seed category")
+					.hasArg().withArgName("seed category")
 					.create('s'));
 			
 			opts.addOption(OptionBuilder.withLongOpt("verbose")
@@ -377,6 +433,17 @@ public class Pep implements ParserListener {
 					.withDescription("use value for given property")
 					.create( "o" ));			
 			
+			opts.addOption(OptionBuilder.withLongOpt("batch")
+					.withDescription("parses each line of a file (- for stdin)"
+						+ " in parallel")
+					.hasArg().withArgName("input file")
+					.create('b'));
+			
+			opts.addOption(OptionBuilder.withLongOpt("compile")
+					.withDescription("writes the grammar as a binary grammar")
+					.hasArg().withArgName("output file")
+					.create('c'));
+			
 			opts.addOption(OptionBuilder.withLongOpt("help")
 					.withDescription("prints this message")
 					.create('h'));
@@ -413,9 +480,39 @@ public class Pep implements ParserListener {
 						}
 					}
 					
+					Grammar grammar = Pep.loadGrammar(
+						Pep.findGrammar(line.getOptionValue('g')));
+					if(line.hasOption('c')) {
+						OutputStream out
+							= new FileOutputStream(line.getOptionValue('c'));
+						try {
+							BinaryGrammar.write(grammar, out);
+						}
+						finally {
+							out.close();
+						}
+						return;
+					}
+					if(!line.hasOption('s')) {
+						throw new MissingOptionException(
+							"Missing required option: s");
+					}
+					
 					Pep pep = new Pep(options);
-					Grammar grammar = new GrammarParser(
-						Pep.findGrammar(line.getOptionValue('g'))).parse();
+					if(line.hasOption('b')) {
+						String in = line.getOptionValue('b');
+						BufferedReader reader = new BufferedReader(
+							in.equals("-") ? new InputStreamReader(System.in)
+								: new FileReader(in));
+						try {
+							pep.parseBatch(grammar, Pep.readInputs(reader),
+								new Category(line.getOptionValue('s')));
+						}
+						finally {
+							reader.close();
+						}
+						return;
+					}
 					
 					List<?> ts = line.getArgList();
 					List<String> tokens = null;
@@ -429,7 +526,6 @@ public class Pep implements ParserListener {
 						}
 					}
 					
-					pep.lastParseStart = System.currentTimeMillis();
 					try {
 						pep.parse(grammar, tokens,
 							new Category(line.getOptionValue('s')));
@@ -449,6 +545,9 @@ public class Pep implements ParserListener {
 			Throwable cause = pe.getCause();
 			Pep.printError((cause == null) ? pe : cause);
 		}
+		catch(IOException ioe) {
+			Pep.printError(ioe);
+		}
 		catch(RuntimeException re) {
 			Pep.printError(re);
 		}
@@ -477,6 +576,39 @@ public class Pep implements ParserListener {
 		return g;
 	}
 	
+	/**
+	 * Loads a grammar file, which is read as a {@link BinaryGrammar binary
+	 * grammar} if it is one, and otherwise parsed as XML by a
+	 * {@link GrammarParser}.
+	 */
+	private static final Grammar loadGrammar(File grammarFile)
+			throws IOException, PepException {
+		InputStream in = new BufferedInputStream(
+			new FileInputStream(grammarFile));
+		Grammar g;
+		try {
+			if(BinaryGrammar.isBinary(in)) {
+				g = BinaryGrammar.read(in);
+			}
+			else {
+				if(GrammarParser.getSchema() == null) {
+					Pep.printMessage("Unable to locate grammar.xsd", Pep.V_ALL);
+				}
+				g = new GrammarParser().parse(in,
+					grammarFile.toURI().toString());
+			}
+		}
+		finally {
+			in.close();
+		}
+		
+		Pep.printMessage("Loading grammar " + g.name + " from "
+				+ grammarFile.getPath(), Pep.V_GRAMMAR);
+		Pep.printMessage(g.toString(), Pep.V_GRAMMAR);
+		Pep.printMessage("", Pep.V_GRAMMAR);
+		return g;
+	}
+	
 	/**
 	 * Tokenizes the string input that occurs on the command line, removing
 	 * &quot; characters.
@@ -518,139 +650,42 @@ public class Pep implements ParserListener {
 		return tokens;
 	}
 	
-	// TODO make GrammarParser public (usable by users)
-	
 	/**
-	 * Parses XML grammar files. 
+	 * Reads the strings to parse in a batch, one per line, with their tokens
+	 * separated by white space. Blank lines are skipped. Lines are only read
+	 * as they are needed.
 	 */
-	static class GrammarParser implements ErrorHandler {
-		File grammarFile;
-		DocumentBuilder documentBuilder;
-		
-		/**
-		 * Create a grammar parser for the specified file.
-		 */
-		GrammarParser(File grammarFile) throws PepException {
-			this.grammarFile = grammarFile;
+	private static final Iterable<List<String>> readInputs(
+			final BufferedReader reader) {
+		return () -> new Iterator<List<String>>() {
+			String next = advance();
 			
-			try {
-				documentBuilder
-					= DocumentBuilderFactory.newInstance().newDocumentBuilder();
-				documentBuilder.setErrorHandler(this);
+			private String advance() {
+				try {
+					String l;
+					do {
+						l = reader.readLine();
+					} while(l != null && l.trim().isEmpty());
+					return l;
+				}
+				catch(IOException ioe) {
+					throw new UncheckedIOException(ioe);
+				}
 			}
-			catch(ParserConfigurationException pce) {
-				throw new PepException("problem instantiating parser", pce);
+			
+			public boolean hasNext() {
+				return (next != null);
 			}
-		}
-		
-		/**
-		 * Parse the XML file specified when this grammar parser was created,
-		 * returning a grammar.
-		 */
-		Grammar parse() throws PepException {
-			Grammar g = null;
 			
-			try {
-				Document d = documentBuilder.parse(grammarFile);
-				// validate
-				SchemaFactory sf = SchemaFactory.newInstance(
-					XMLConstants.W3C_XML_SCHEMA_NS_URI);
-				StreamSource src = new StreamSource(
-					getClass().getClassLoader().getResourceAsStream(
-							"META-INF/etc/grammar.xsd"));
-				
-				if(src.getInputStream() == null) {
-					Pep.printMessage("Unable to locate grammar.xsd", Pep.V_ALL);
-				}
-				else {
-					Schema schema = sf.newSchema(src);
-					Validator vlad = schema.newValidator();
-					
-					try {
-						vlad.validate(new DOMSource(d));
-					}
-					catch(SAXException se) {
-						throw new PepException("invalid grammar", se);
-					}
+			public List<String> next() {
+				if(next == null) {
+					throw new NoSuchElementException();
 				}
 				
-				Element root = d.getDocumentElement();
-				
-				g = new Grammar(root.getAttribute("name"));
-				Pep.printMessage("Loading grammar " + g.name + " from "
-						+ grammarFile.getPath(), Pep.V_GRAMMAR);
-				
-				NodeList rules = root.getElementsByTagName("rule");
-				Element ruleEl;
-				Category left;
-				List<Category> right;
-				for(int i = 0; i < rules.getLength(); i++) {
-					ruleEl = (Element)rules.item(i);
-					left = new Category(ruleEl.getAttribute("category"));
-					
-					NodeList rightList = ruleEl.getChildNodes();
-					right = new ArrayList<Category>(rightList.getLength());
-					
-					Node rightNode;
-					Element rightEl;
-					for(int j = 0; j < rightList.getLength(); j++) {
-						rightNode = rightList.item(j);
-						if(rightNode instanceof Element) {
-							rightEl = (Element)rightNode;
-							Attr termAttr
-								= rightEl.getAttributeNode("terminal");
-							
-							right.add(new Category(rightEl.getAttribute("name"), 
-								(termAttr != null && termAttr.getTextContent()
-									.equals("true"))));
-						}
-					}
-				
-					g.addRule(new Rule(left,
-							right.toArray(new Category[right.size()])));
-				}
-			}
-			catch(IllegalArgumentException iae) {
-				throw new PepException("problem loading grammar", iae);
-			}
-			catch(SAXException se) {
-				throw new PepException("problem parsing", se);
-			}
-			catch(IOException io) {
-				throw new PepException("problem reading grammar", io);
+				List<String> tokens = Arrays.asList(next.trim().split("\\s+"));
+				next = advance();
+				return tokens;
 			}
-			
-			Pep.printMessage(g.toString(), Pep.V_GRAMMAR);
-			Pep.printMessage("", Pep.V_GRAMMAR);
-			
-			return g;
-		}
-		
-		/**
-		 * Does nothing because an exception are generated. Present for
-		 * binary compatibility with ErrorHandler.
-		 */
-		public void error(SAXParseException e) throws SAXException {
-			// do nothing
-		}
-	
-		/**
-		 * Does nothing because an exception are generated. Present for
-		 * binary compatibility with ErrorHandler.
-		 */
-		public void fatalError(SAXParseException e) throws SAXException {
-			// do nothing
-		}
-	
-		/**
-		 * Event handler for warnings that occur during parsing. Prints a
-		 * warning message to System.err.
-		 * @see Pep#printWarning(String)
-		 */
-		public void warning(SAXParseException e) throws SAXException {
-			Pep.printWarning("line " + e.getLineNumber() + ": "
-				+ e.getMessage());
-		}
+		};
 	}
-	
 }
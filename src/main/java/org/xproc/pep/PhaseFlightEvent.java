@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+
+/**
+ * A JDK Flight Recorder event for a {@link ParseStatistics.Phase phase} of
+ * a parse at one Earley set that took at least a threshold, by default
+ * 1 ms. It is disabled by default, and recorded once it is enabled by its
+ * name, <code>org.xproc.pep.ParsePhase</code>, in the settings of a
+ * recording, where its threshold can also be changed. While it is disabled,
+ * a parse only tests whether it is enabled once, when it is started.
+ * <p>
+ * Prediction and completion are interleaved while an Earley set is closed,
+ * so a {@link ParseStatistics.Phase#COMPLETE completion} event spans
+ * closing the set, and the predictions made meanwhile are recorded as
+ * events of their own, nested in it.
+ * @see ParseFlightEvent
+ */
+@Name("org.xproc.pep.ParsePhase")
+@Label("Parse Phase")
+@jdk.jfr.Category("Pep")
+@Description("Predicting, scanning or completing at one Earley set of a"
+	+ " parse")
+@Enabled(false)
+@StackTrace(false)
+@Threshold("1 ms")
+final class PhaseFlightEvent extends Event {
+	@Label("Phase")
+	String phase;
+
+	@Label("Index")
+	@Description("The index of the Earley set")
+	int index;
+
+	/**
+	 * Tests whether these events are enabled, when a parse is started.
+	 */
+	static boolean enabled() {
+		return new PhaseFlightEvent().isEnabled();
+	}
+
+	/**
+	 * Begins an event for a phase.
+	 * @param enabled Whether these events were {@link #enabled() enabled}
+	 * when the parse was started.
+	 * @return The event, or <code>null</code> if it is not enabled.
+	 */
+	static PhaseFlightEvent start(boolean enabled) {
+		if(!enabled) {
+			return null;
+		}
+
+		PhaseFlightEvent event = new PhaseFlightEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Ends an event for a phase, and records it if it lasted at least the
+	 * threshold.
+	 * @param event The event, or <code>null</code> to do nothing.
+	 */
+	static void finish(PhaseFlightEvent event, ParseStatistics.Phase phase,
+			int index) {
+		if(event != null) {
+			event.end();
+			if(event.shouldCommit()) {
+				event.phase = phase.name().toLowerCase();
+				event.index = index;
+				event.commit();
+			}
+		}
+	}
+}
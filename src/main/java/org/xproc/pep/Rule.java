@@ -30,16 +30,18 @@ public class Rule {
 	Category left;
 	Category[] right;
 	
+	private int hash; // computed on first use
+	
 	/**
 	 * Creates a new rule with the specified left side category and series of
 	 * categories on the right side.
 	 * @param left The left side (trigger) for this production rule.
 	 * @param right The right side (productions) licensed for this rule's
 	 * left side.
+	 * An empty right side makes an {@link #isEmpty() empty rule}.
 	 * @throws IllegalArgumentException If
 	 * <ol>
 	 * 	<li>the specified left or right categories are <code>null</code>,</li>
-	 * 	<li>the right series is zero-length,</li>
 	 * 	<li>the right side contains a <code>null</code> category.</li>
 	 * </ol> 
 	 */
@@ -50,8 +52,8 @@ public class Rule {
 		if(left.terminal) {
 			throw new IllegalArgumentException("left category is terminal");
 		}
-		if(right == null || right.length == 0) {
-			throw new IllegalArgumentException("no right categories");
+		if(right == null) {
+			throw new IllegalArgumentException("null right categories");
 		}
 		
 		// check for nulls on right
@@ -66,6 +68,16 @@ public class Rule {
 		this.right = right;
 	}
 	
+	/**
+	 * Creates a rule with the same sides as the specified rule, without
+	 * checking them again.
+	 */
+	Rule(Rule rule) {
+		left = rule.left;
+		right = rule.right;
+		hash = rule.hash;
+	}
+	
 	/**
 	 * Gets the left side category of this rule.
          * @return The left side
@@ -82,6 +94,17 @@ public class Rule {
 		return right;
 	}
 	
+	/**
+	 * Tests whether this rule has an empty right side, so that its left side
+	 * derives the empty string.
+	 * @return <code>true</code> iff this rule's right side contains no
+	 * categories.
+	 * @see Grammar#isNullable(Category)
+	 */
+	public boolean isEmpty() {
+		return (right.length == 0);
+	}
+	
 	/**
 	 * Tests whether this rule is a pre-terminal production rule. A rule is a
 	 * preterminal rule if its right side contains a
@@ -120,6 +143,9 @@ public class Rule {
 	 */
 	@Override
 	public boolean equals(Object obj) {
+		if(obj == this) {
+			return true;
+		}
 		if(obj instanceof Rule) {
 			Rule or = (Rule)obj;			
 			return (left.equals(or.left) && Arrays.equals(right, or.right));
@@ -130,11 +156,16 @@ public class Rule {
 
 	/**
 	 * Compues a hash code for this rule based on its left and right side
-	 * categories.
+	 * categories. Since rules are immutable, the hash code is only computed
+	 * once.
 	 */
 	@Override
 	public int hashCode() {
-		return (31 * left.hashCode() * Arrays.hashCode(right));
+		if(hash == 0) {
+			hash = (31 * left.hashCode() * Arrays.hashCode(right));
+		}
+		
+		return hash;
 	}
 
 	/**
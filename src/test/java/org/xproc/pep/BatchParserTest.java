@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import static org.xproc.pep.Status.ACCEPT;
+import static org.xproc.pep.Status.ERROR;
+import static org.xproc.pep.Status.REJECT;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Assert;
+
+public class BatchParserTest extends PepFixture {
+
+	BatchParser batchParser;
+	ForkJoinPool pool;
+	List<List<String>> inputs;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		pool = new ForkJoinPool(4);
+		batchParser = new BatchParser(new EarleyParser(grammar.freeze()), pool);
+
+		inputs = new ArrayList<List<String>>();
+		for(int i = 0; i < 1000; i++) {
+			switch(i % 4) {
+			case 0:
+				inputs.add(Arrays.asList("the", "boy", "left"));
+				break;
+			case 1:
+				inputs.add(Arrays.asList("the", "girl", "left"));
+				break;
+			case 2:
+				inputs.add(Arrays.asList("girl", "the", "left"));
+				break;
+			default:
+				inputs.add(Collections.<String>emptyList());
+			}
+		}
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		pool.shutdown();
+		super.tearDown();
+	}
+
+	public final void testParseAll() throws PepException {
+		Batch batch = batchParser.parseAll(inputs, S);
+		Assert.assertEquals(1000, batch.getCount());
+		Assert.assertEquals(500, batch.getAccepted());
+		Assert.assertEquals(250, batch.getRejected());
+		Assert.assertEquals(250, batch.getErrors());
+		Assert.assertEquals(2250L, batch.getTokens());
+		Assert.assertTrue(batch.getTokensPerSecond() > 0.0);
+
+		List<Parse> parses = batch.getParses();
+		Assert.assertEquals(1000, parses.size());
+		Status[] expected = {ACCEPT, ACCEPT, REJECT, ERROR};
+		for(int i = 0; i < parses.size(); i++) {
+			Assert.assertEquals(inputs.get(i), parses.get(i).getTokens());
+			Assert.assertEquals(expected[i % 4], parses.get(i).getStatus());
+		}
+	}
+
+	public final void testParseAllAsCompleted() throws PepException {
+		final Parse[] parses = new Parse[inputs.size()];
+		Batch batch = batchParser.parseAll(inputs, S,
+			(parse, index) -> {
+				Assert.assertNull(parses[index]);
+				parses[index] = parse;
+			});
+		Assert.assertTrue(batch.getParses().isEmpty());
+		Assert.assertEquals(500, batch.getAccepted());
+
+		for(int i = 0; i < parses.length; i++) {
+			Assert.assertEquals(inputs.get(i), parses[i].getTokens());
+		}
+	}
+
+	public final void testNullSeed() {
+		try {
+			batchParser.parseAll(inputs, null);
+			Assert.fail("parsed a batch without a seed");
+		}
+		catch(PepException expected) {
+			// expected
+		}
+	}
+}
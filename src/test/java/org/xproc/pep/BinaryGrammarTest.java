@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import static org.xproc.pep.Status.ACCEPT;
+import static org.xproc.pep.Status.REJECT;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Assert;
+
+public class BinaryGrammarTest extends PepFixture {
+
+	Grammar characters;
+	Category Word, Letter, Digit, Other;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		Word = new Category("Word");
+		Letter = CategoryCharacterSet.inclusion("Letter", Arrays.asList(
+			CharacterSet.unicodeClass("L"), CharacterSet.literal("_")));
+		Digit = CategoryCharacterSet.inclusion("Digit",
+			CharacterSet.range('0', '9'));
+		Other = CategoryCharacterSet.exclusion("Other",
+			CharacterSet.literal("é😀"));
+
+		characters = new Grammar("characters é");
+		characters.addRule(new Rule(Word, Letter));
+		characters.addRule(new Rule(Word, Digit));
+		characters.addRule(new Rule(Word, Other));
+		characters.addRule(new Rule(Word, Letter, Word));
+		characters.addRule(new Rule(Word, Digit, Word));
+		characters.addRule(new Rule(Word));
+		characters.addRule(new Rule(A, Vowel, Consonant, Zero_to_Nine));
+	}
+
+	public final void testRoundTrip() throws IOException, PepException {
+		for(Grammar g : new Grammar[] {grammar, mixed, characters}) {
+			Grammar read = roundTrip(g);
+			Assert.assertEquals(g.getName(), read.getName());
+			Assert.assertEquals(g.getAllRules(), read.getAllRules());
+		}
+
+		EarleyParser parser = new EarleyParser(roundTrip(grammar));
+		Assert.assertEquals(ACCEPT, parser.recognize(tokens, seed));
+
+		parser = new EarleyParser(roundTrip(characters));
+		Assert.assertEquals(ACCEPT, parser.parseCharacters("a_9è", Word)
+			.getStatus());
+		Assert.assertEquals(REJECT, parser.parseCharacters("a😀", Word)
+			.getStatus());
+		Assert.assertEquals(ACCEPT,
+			parser.recognize(Arrays.asList("E", "x", "0"), A));
+		Assert.assertEquals(REJECT,
+			parser.recognize(Arrays.asList("x", "E", "0"), A));
+	}
+
+	public final void testSharedCategories() throws IOException, PepException {
+		Grammar read = roundTrip(characters);
+		Rule recursive = null, single = null;
+		for(Rule r : read.getRules(Word)) {
+			if(r.right.length == 2 && r.right[0].equals(Letter)) {
+				recursive = r;
+			}
+			else if(r.right.length == 1 && r.right[0].equals(Letter)) {
+				single = r;
+			}
+		}
+		Assert.assertSame(recursive.left, recursive.right[1]);
+		Assert.assertSame(single.right[0], recursive.right[0]);
+	}
+
+	public final void testIsBinary() throws IOException, PepException {
+		InputStream in = new ByteArrayInputStream(write(grammar));
+		Assert.assertTrue(BinaryGrammar.isBinary(in));
+		Assert.assertTrue(BinaryGrammar.isBinary(in)); // reset
+		Assert.assertEquals(grammar.getAllRules(),
+			BinaryGrammar.read(in).getAllRules());
+
+		Assert.assertFalse(BinaryGrammar.isBinary(
+			new ByteArrayInputStream("<grammar/>".getBytes("UTF-8"))));
+		Assert.assertFalse(BinaryGrammar.isBinary(
+			new ByteArrayInputStream(new byte[2])));
+	}
+
+	public final void testInvalid() throws IOException, PepException {
+		byte[] bytes = write(grammar);
+
+		bytes[7]++; // version
+		try {
+			BinaryGrammar.read(new ByteArrayInputStream(bytes));
+			Assert.fail("read a binary grammar of another version");
+		}
+		catch(PepException expected) {
+			Assert.assertTrue(expected.getMessage().contains(
+				Integer.toString(BinaryGrammar.VERSION + 1)));
+		}
+
+		bytes[7]--;
+		bytes[0]++; // magic
+		try {
+			BinaryGrammar.read(new ByteArrayInputStream(bytes));
+			Assert.fail("read a binary grammar without its magic number");
+		}
+		catch(PepException expected) {
+			// expected
+		}
+
+		bytes[0]--;
+		try {
+			BinaryGrammar.read(new ByteArrayInputStream(
+				Arrays.copyOf(bytes, bytes.length - 1)));
+			Assert.fail("read a truncated binary grammar");
+		}
+		catch(EOFException expected) {
+			// expected
+		}
+		catch(PepException pe) {
+			Assert.fail(pe.toString());
+		}
+
+		// lengths past the end of the stream, or negative
+		int name = 8, count = name + 4 + grammar.getName().length();
+		for(int offset : new int[] {name, count}) {
+			for(int length : new int[] {Integer.MAX_VALUE, -2}) {
+				byte[] corrupt = bytes.clone();
+				ByteBuffer.wrap(corrupt).putInt(offset, length);
+				try {
+					BinaryGrammar.read(new ByteArrayInputStream(corrupt));
+					Assert.fail("read a binary grammar of length " + length);
+				}
+				catch(EOFException expected) {
+					Assert.assertTrue(length > 0);
+				}
+				catch(PepException expected) {
+					Assert.assertTrue(length < 0);
+				}
+			}
+		}
+	}
+
+	public final void testUnsupportedCategory() throws IOException, PepException {
+		Grammar g = new Grammar("custom");
+		g.addRule(new Rule(A, new Category("any", true) {
+			@Override
+			public boolean matches(String token, boolean ignoreCase) {
+				return true;
+			}
+		}));
+
+		try {
+			write(g);
+			Assert.fail("wrote a category of an unknown class");
+		}
+		catch(PepException expected) {
+			// expected
+		}
+	}
+
+	private static byte[] write(Grammar grammar)
+			throws IOException, PepException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BinaryGrammar.write(grammar, out);
+		return out.toByteArray();
+	}
+
+	private static Grammar roundTrip(Grammar grammar)
+			throws IOException, PepException {
+		return BinaryGrammar.read(new ByteArrayInputStream(write(grammar)));
+	}
+}
@@ -60,4 +60,30 @@ public class CategoryCharacterSetTest extends PepFixture {
         assertFalse(set1.matches("\u2611", true));
         assertFalse(set1.matches("!", true));
     }
+
+    public void testMatchesNotInAnyRange() {
+        CharacterSet alpha = CharacterSet.range('A', 'Z');
+        CharacterSet digits = CharacterSet.range('0', '9');
+        CategoryCharacterSet set1 = CategoryCharacterSet.exclusion("test", Arrays.asList(alpha, digits));
+        assertFalse(set1.matches("A", false));
+        assertFalse(set1.matches("5", false));
+        assertTrue(set1.matches("a", false));
+        assertTrue(set1.matches("!", false));
+        assertFalse(set1.matches("a", true));
+        assertTrue(set1.matches("\uD83D\uDE00", false));
+        assertFalse(set1.matches("", false));
+        assertFalse(set1.matches("!!", false));
+    }
+
+    public void testMatchesCodePoint() {
+        CharacterSet letters = CharacterSet.unicodeClass("L");
+        CharacterSet emoji = CharacterSet.range(0x1F600, 0x1F64F);
+        CategoryCharacterSet set1 = CategoryCharacterSet.inclusion("test", Arrays.asList(letters, emoji));
+        assertTrue(set1.matches('\u03C0', false));
+        assertTrue(set1.matches(0x1F600, false));
+        assertTrue(set1.matches(0x10400, false)); // DESERET CAPITAL LETTER LONG I
+        assertFalse(set1.matches(0x1F650, false));
+        assertFalse(set1.matches('0', false));
+        assertFalse(set1.matches(-1, false));
+    }
 }
@@ -114,4 +114,25 @@ public class CategorySetTest extends PepFixture {
             fail();
         }
     }
+
+    public void testMatches() {
+        List<String> months = Arrays.asList("January", "February", "March", "march");
+        CategorySet month = CategorySet.inclusion("month", months);
+        Assert.assertTrue(month.matches("March", false));
+        Assert.assertTrue(month.matches("march", false));
+        Assert.assertFalse(month.matches("MARCH", false));
+        Assert.assertTrue(month.matches("MARCH", true));
+        Assert.assertTrue(month.matches("fEBRUARY", true));
+        Assert.assertFalse(month.matches("April", true));
+        Assert.assertFalse(month.matches(null, true));
+
+        CategorySet notMonth = CategorySet.exclusion("month", months);
+        Assert.assertFalse(notMonth.matches("JANUARY", true));
+        Assert.assertTrue(notMonth.matches("JANUARY", false));
+
+        Assert.assertEquals(month, CategorySet.inclusion("month",
+                Arrays.asList("march", "February", "January", "March", "March")));
+        Assert.assertFalse(month.equals(CategorySet.inclusion("month",
+                Arrays.asList("January", "February", "March"))));
+    }
 }
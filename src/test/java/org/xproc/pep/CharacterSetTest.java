@@ -70,4 +70,15 @@ public class CharacterSetTest extends PepFixture {
         assertFalse(letters.matches('Ǵ'));
         assertTrue(letters.matches('π'));
     }
+
+    public void testSupplementary() {
+        CharacterSet letters = CharacterSet.unicodeClass("Lu");
+        assertTrue(letters.matches(0x10400));
+        assertFalse(letters.matches(0x10428));
+        CharacterSet emoji = CharacterSet.literal("\uD83D\uDE00\uD83D\uDE4F");
+        assertTrue(emoji.matches(0x1F600));
+        assertTrue(emoji.matches(0x1F64F));
+        assertFalse(emoji.matches(0x1F601));
+        assertFalse(emoji.matches(0xD83D));
+    }
 }
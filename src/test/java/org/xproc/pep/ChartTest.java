@@ -137,4 +137,26 @@ public class ChartTest extends PepFixture {
 		Assert.assertEquals(c, chart);
 	}
 
+	public final void testParserChart() throws PepException {
+		Parse parse = new EarleyParser(grammar).parse(tokens, seed);
+		Chart c = parse.getChart();
+		Assert.assertNotNull(c.items);
+		Assert.assertEquals(tokens.size(), c.lastIndex().intValue());
+		Assert.assertEquals(new Chart(c), c);
+		Assert.assertEquals(new Chart(c).hashCode(), c.hashCode());
+		
+		int count = c.countEdges();
+		Edge e = c.getEdges(1).iterator().next();
+		Assert.assertEquals(1, c.indexOf(e).intValue());
+		Assert.assertTrue(c.getEdges(1).contains(e));
+		Assert.assertFalse(c.getEdges(0).contains(e));
+		Assert.assertEquals(2, c.subChart(1, 3).indices().size());
+		
+		// modifying the chart copies its edges
+		Assert.assertTrue(c.addEdge(0, edge1));
+		Assert.assertNull(c.items);
+		Assert.assertEquals(count + 1, c.countEdges());
+		Assert.assertTrue(c.contains(e));
+	}
+
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Assert;
+
+public class CompiledGrammarTest extends PepFixture {
+
+	CompiledGrammar cg;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		cg = grammar.compile();
+	}
+
+	public final void testCategoryIds() {
+		Assert.assertEquals(0, cg.getCategoryId(Category.START));
+		Assert.assertEquals(-1, cg.getCategoryId(Z));
+
+		for(int i = 0; i < cg.countCategories(); i++) {
+			Assert.assertEquals(i, cg.getCategoryId(cg.getCategory(i)));
+		}
+
+		Assert.assertEquals(cg.getCategoryId(S),
+			cg.getCategoryId(new Category(S.name, false)));
+	}
+
+	public final void testRuleIds() {
+		Rule r = new Rule(NP, Det, N);
+		int id = cg.getRuleId(r);
+		Assert.assertTrue(id >= 0);
+		Assert.assertEquals(r, cg.getRule(id));
+		Assert.assertEquals(id, cg.getRuleId(new DottedRule(r, 1)));
+		Assert.assertEquals(-1, cg.getRuleId(rule1));
+
+		// start rules for every non-terminal
+		Assert.assertTrue(cg.getRuleId(new Rule(Category.START, NP)) >= 0);
+		Assert.assertEquals(-1,
+			cg.getRuleId(new Rule(Category.START, the)));
+	}
+
+	public final void testDottedRules() {
+		Rule r = new Rule(S, NP, VP);
+		int base = cg.dottedBase[cg.getRuleId(r)];
+
+		for(int i = 0; i <= r.right.length; i++) {
+			DottedRule dr = cg.dottedRule(base + i);
+			Assert.assertEquals(new DottedRule(r, i), dr);
+			Assert.assertSame(dr, cg.dottedRule(base + i));
+			Assert.assertEquals(base + i, cg.dottedId(dr));
+			Assert.assertEquals(base + i, cg.dottedId(new DottedRule(r, i)));
+		}
+
+		Assert.assertEquals(cg.getCategoryId(NP), cg.dottedNext[base]);
+		Assert.assertEquals(-1, cg.dottedNext[base + r.right.length]);
+	}
+
+	public final void testCompile() {
+		Assert.assertSame(cg, grammar.compile());
+		Assert.assertFalse(grammar.addRule(new Rule(S, NP, VP)));
+		Assert.assertSame(cg, grammar.compile());
+
+		grammar.addRule(new Rule(VP, Z));
+		CompiledGrammar recompiled = grammar.compile();
+		Assert.assertNotSame(cg, recompiled);
+		Assert.assertTrue(recompiled.getCategoryId(Z) >= 0);
+		Assert.assertEquals(-1, cg.getCategoryId(Z));
+
+		try {
+			new CompiledGrammar(null);
+			Assert.fail("able to compile null grammar");
+		}
+		catch(NullPointerException expected) {}
+	}
+
+	public final void testIncompatibleRule() {
+		Assert.assertNull(cg.incompatibleRule);
+
+		Rule r = new Rule(Det, the, a);
+		grammar.addRule(r);
+		Assert.assertEquals(r, grammar.compile().incompatibleRule);
+	}
+
+	public final void testNullable() {
+		Assert.assertFalse(cg.isNullable(S));
+
+		grammar.addRule(new Rule(A)); // A ->
+		grammar.addRule(new Rule(B, A, A));
+		grammar.addRule(new Rule(C, B, a));
+		grammar.addRule(new Rule(D, D)); // only derives itself
+		grammar.addRule(new Rule(E, D, A));
+		CompiledGrammar nullable = grammar.compile();
+
+		Assert.assertTrue(nullable.isNullable(A));
+		Assert.assertTrue(nullable.isNullable(B));
+		Assert.assertFalse(nullable.isNullable(C));
+		Assert.assertFalse(nullable.isNullable(D));
+		Assert.assertFalse(nullable.isNullable(E));
+		Assert.assertFalse(nullable.isNullable(a));
+		Assert.assertFalse(nullable.isNullable(Z));
+		Assert.assertTrue(grammar.isNullable(B));
+
+		// the rule showing B nullable only uses categories shown before it
+		int b = nullable.getCategoryId(B);
+		Assert.assertEquals(new Rule(B, A, A),
+			nullable.getRule(nullable.nullableRule[b]));
+	}
+
+	public final void testPredictionClosure() {
+		int[] closure = cg.predictionClosure[cg.getCategoryId(S)];
+		Assert.assertEquals(cg.getCategoryId(S), closure[0]);
+		Assert.assertTrue(contains(closure, cg.getCategoryId(NP)));
+		Assert.assertTrue(contains(closure, cg.getCategoryId(Det)));
+		Assert.assertFalse(contains(closure, cg.getCategoryId(VP)));
+		Assert.assertFalse(contains(closure, cg.getCategoryId(the)));
+
+		// categories after a nullable one are predicted too
+		grammar.addRule(new Rule(A));
+		grammar.addRule(new Rule(B, A, C, D));
+		grammar.addRule(new Rule(C, a));
+		CompiledGrammar nullable = grammar.compile();
+		closure = nullable.predictionClosure[nullable.getCategoryId(B)];
+		Assert.assertEquals(3, closure.length);
+		Assert.assertTrue(contains(closure, nullable.getCategoryId(A)));
+		Assert.assertTrue(contains(closure, nullable.getCategoryId(C)));
+		Assert.assertFalse(contains(closure, nullable.getCategoryId(D)));
+	}
+
+	public final void testFirstSets() {
+		Assert.assertEquals(new HashSet<Category>(Arrays.asList(a, the)),
+			cg.getFirstSet(S));
+		Assert.assertEquals(Collections.singleton(left), cg.getFirstSet(VP));
+		Assert.assertEquals(Collections.singleton(the), cg.getFirstSet(the));
+		Assert.assertTrue(cg.getFirstSet(Z).isEmpty());
+
+		// a nullable prefix lets later categories begin a rule
+		grammar.addRule(new Rule(A));
+		grammar.addRule(new Rule(B, A, VP));
+		Assert.assertEquals(Collections.singleton(left),
+			grammar.getFirstSet(B));
+
+		CompiledGrammar nullable = grammar.compile();
+		int rule = nullable.getRuleId(new Rule(B, A, VP));
+		Assert.assertTrue(nullable.canBegin(rule,
+			nullable.lookahead("left", false)));
+		Assert.assertFalse(nullable.canBegin(rule,
+			nullable.lookahead("the", false)));
+		Assert.assertTrue(nullable.canBegin(nullable.getRuleId(new Rule(A)),
+			nullable.lookahead(null, false)));
+		Assert.assertTrue(nullable.lookahead("LEFT", true)
+			.get(nullable.getCategoryId(left)));
+	}
+
+	public final void testMatching() {
+		int id = cg.getCategoryId(the);
+		Assert.assertArrayEquals(new int[] {id}, cg.matching("the", false));
+		Assert.assertEquals(0, cg.matching("The", false).length);
+		Assert.assertArrayEquals(new int[] {id}, cg.matching("THE", true));
+		Assert.assertEquals(0, cg.matching("dog", true).length);
+		Assert.assertEquals(0, cg.matching(null, false).length);
+
+		// exclusions are tested, literals and inclusions looked up, in order
+		// of identifier
+		grammar.addRule(new Rule(A, Vowel));
+		grammar.addRule(new Rule(B, Consonant));
+		grammar.addRule(new Rule(C, new Category("E", true)));
+		CompiledGrammar sets = grammar.compile();
+		int vowel = sets.getCategoryId(Vowel);
+		int consonant = sets.getCategoryId(Consonant);
+		int e = sets.getCategoryId(new Category("E", true));
+		Assert.assertArrayEquals(sorted(vowel, e), sets.matching("E", false));
+		Assert.assertArrayEquals(new int[] {consonant},
+			sets.matching("e", false));
+		Assert.assertArrayEquals(sorted(vowel, e), sets.matching("e", true));
+		Assert.assertArrayEquals(sorted(sets.getCategoryId(left), consonant),
+			sets.matching("left", false));
+		Assert.assertArrayEquals(new int[] {consonant}, sets.patterns);
+
+		// singleton preterminals are found by their terminal
+		Assert.assertEquals(new Rule(Det, the),
+			grammar.getSingletonPreterminal(Det, "THE", true));
+		Assert.assertNull(grammar.getSingletonPreterminal(Det, "THE", false));
+		Assert.assertNull(grammar.getSingletonPreterminal(N, "the", false));
+	}
+
+	private static int[] sorted(int... ids) {
+		Arrays.sort(ids);
+		return ids;
+	}
+
+	private static boolean contains(int[] ids, int id) {
+		for(int i : ids) {
+			if(i == id) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
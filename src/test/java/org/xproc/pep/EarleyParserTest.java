@@ -11,13 +11,31 @@
 package org.xproc.pep;
 
 import static org.xproc.pep.ParserOption.IGNORE_TERMINAL_CASE;
+import static org.xproc.pep.ParserOption.MEMOIZE_RIGHT_RECURSION;
 import static org.xproc.pep.ParserOption.PREDICT_FOR_PRETERMINALS;
+import static org.xproc.pep.ParserOption.PREDICT_WITH_LOOKAHEAD;
 import static org.xproc.pep.Status.ACCEPT;
 import static org.xproc.pep.Status.ERROR;
 import static org.xproc.pep.Status.REJECT;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 import org.junit.Assert;
 
@@ -27,10 +45,12 @@ import org.junit.Assert;
  * @version $LastChangedRevision: 2521 $
  */
 public class EarleyParserTest extends PepFixture 
-		implements ParserListener {
+		implements ParserListener, ChartListener {
 
 	EarleyParser earleyParser;
 	Parse parse;
+	Set<ParserEventType> eventTypes = ParserEventType.ALL;
+	int edges, items; // notified of
 	
 	Grammar emptyGrammar;
 	
@@ -54,8 +74,41 @@ public class EarleyParserTest extends PepFixture
 	
 	public final void testRecognize() throws PepException {
 		Assert.assertEquals(ACCEPT, earleyParser.recognize(tokens, seed));
+		Assert.assertEquals(REJECT, earleyParser.recognize("the boy", seed));
+		Assert.assertEquals(REJECT, earleyParser.recognize("boy the", seed));
+		
+		try {
+			earleyParser.recognize(Arrays.<String>asList(), seed);
+			Assert.fail("recognized empty tokens");
+		}
+		catch(PepException expected) {
+			// expected
+		}
+		
+		// with a listener, a full parse is made
+		earleyParser.setListener(this);
+		Assert.assertEquals(ACCEPT, earleyParser.recognize(tokens, seed));
+		Assert.assertEquals(ACCEPT, parse.getStatus());
 	}
-	
+
+	public final void testRecognizeErrors() throws PepException {
+		// errors are not thrown, and recognition makes no parse
+		eventTypes = EnumSet.of(ParserEventType.PARSE_ERROR);
+		earleyParser.setListener(this);
+		Assert.assertEquals(ERROR, earleyParser.recognize(
+			(Iterable<String>)null, seed));
+		Assert.assertEquals(ERROR, earleyParser.recognize(
+			Arrays.<String>asList(), seed));
+		Assert.assertEquals(ERROR, earleyParser.recognize(
+			Arrays.asList(new String[] {"the", null, "left"}), seed));
+		Assert.assertEquals(ERROR, earleyParser.recognize(
+			Arrays.asList(new String[] {"the", "boy", null}), seed));
+		Assert.assertNull(parse);
+
+		Assert.assertEquals(ACCEPT, earleyParser.recognize(tokens, seed));
+		Assert.assertEquals(REJECT, earleyParser.recognize("the boy", seed));
+	}
+
 	/**
 	 * Test method for {@link EarleyParser#parse(Iterable, Category)}.
 	 */
@@ -193,14 +246,448 @@ public class EarleyParserTest extends PepFixture
 		Assert.assertEquals(REJECT, parse.getStatus());
 	}
 
+	public final void testMemoizeRightRecursion() throws PepException {
+		Grammar list = new Grammar("list");
+		list.addRule(new Rule(S, a, X)); // S -> a X
+		list.addRule(new Rule(X, b, X)); // X -> b X
+		list.addRule(new Rule(X, b));
+		list.addRule(new Rule(X, b, a));
+		
+		StringBuilder sb = new StringBuilder("a");
+		for(int i = 0; i < 40; i++) {
+			sb.append(" b");
+		}
+		String tokens = sb.toString();
+		int n = 41;
+		
+		EarleyParser memoizing = new EarleyParser(list);
+		Assert.assertTrue(memoizing.getOption(MEMOIZE_RIGHT_RECURSION));
+		Parse memoized = memoizing.parse(tokens, S);
+		int pending = memoized.items.peek(n).size;
+		
+		EarleyParser plain = new EarleyParser(list);
+		plain.setOption(MEMOIZE_RIGHT_RECURSION, false);
+		Parse full = plain.parse(tokens, S);
+		Assert.assertTrue(pending < full.items.peek(n).size);
+		
+		// deferred items appear as soon as the chart is read
+		Assert.assertEquals(ACCEPT, memoized.getStatus());
+		Assert.assertEquals(full.getChart().countEdges(),
+			memoized.getChart().countEdges());
+		Assert.assertEquals(full.getChart(), memoized.getChart());
+		Assert.assertEquals(full.getParseTree(), memoized.getParseTree());
+		Assert.assertEquals(full.countParseTrees(), memoized.countParseTrees());
+		
+		Parse rejected = memoizing.parse(tokens + " b a b", S);
+		Assert.assertEquals(REJECT, rejected.getStatus());
+		Parse ambiguous = memoizing.parse(tokens + " a", S);
+		Assert.assertEquals(ACCEPT, ambiguous.getStatus());
+		Assert.assertEquals(plain.parse(tokens + " a", S).getParseTree(),
+			ambiguous.getParseTree());
+	}
+
+	public final void testMemoizeRightRecursionChain() throws PepException {
+		// C0 -> x C1, ..., C19 -> x C20, C20 -> x: a reduction path of 21
+		// distinct categories, longer than the path first allocated
+		Grammar chain = new Grammar("chain");
+		Category x = new Category("x", true);
+		int n = 20;
+		Category[] c = new Category[n + 1];
+		for(int i = 0; i <= n; i++) {
+			c[i] = new Category("C" + i);
+		}
+		StringBuilder sb = new StringBuilder("x");
+		for(int i = 0; i < n; i++) {
+			chain.addRule(new Rule(c[i], x, c[i + 1]));
+			sb.append(" x");
+		}
+		chain.addRule(new Rule(c[n], x));
+		String tokens = sb.toString();
+		
+		EarleyParser plain = new EarleyParser(chain);
+		plain.setOption(MEMOIZE_RIGHT_RECURSION, false);
+		Parse full = plain.parse(tokens, c[0]);
+		Parse memoized = new EarleyParser(chain).parse(tokens, c[0]);
+		Assert.assertEquals(ACCEPT, memoized.getStatus());
+		Assert.assertEquals(full.getChart(), memoized.getChart());
+		Assert.assertEquals(full.getParseTree(), memoized.getParseTree());
+		
+		Assert.assertEquals(REJECT, new EarleyParser(chain).recognize(
+			tokens + " x", c[0]));
+	}
+	
+	public final void testEventTypes() throws PepException {
+		earleyParser.setListener(this);
+		parse = earleyParser.parse(tokens, seed);
+		Assert.assertTrue(edges > 0);
+		
+		// no edge events, but the parse and errors
+		eventTypes = EnumSet.of(ParserEventType.PARSE_COMPLETE,
+			ParserEventType.PARSE_ERROR);
+		edges = 0;
+		parse = null;
+		Assert.assertEquals(ACCEPT, earleyParser.parse(tokens, seed).getStatus());
+		Assert.assertEquals(0, edges);
+		Assert.assertNotNull(parse);
+		Assert.assertEquals(ERROR, earleyParser.parse(
+			Arrays.asList(new String[] {"the", null, "left"}), seed).getStatus());
+		
+		// errors the listener does not want are thrown
+		eventTypes = EnumSet.of(ParserEventType.PARSE_COMPLETE);
+		try {
+			earleyParser.parse(
+				Arrays.asList(new String[] {"the", null, "left"}), seed);
+			Assert.fail("error not thrown");
+		}
+		catch(PepException expected) {}
+		
+		// just errors, so recognition makes no parse
+		eventTypes = EnumSet.of(ParserEventType.PARSE_ERROR);
+		parse = null;
+		Assert.assertEquals(ACCEPT, earleyParser.recognize(tokens, seed));
+		Assert.assertNull(parse);
+		
+		// and right recursion is memoized
+		Grammar list = new Grammar("list");
+		list.addRule(new Rule(S, a, X)); // S -> a X
+		list.addRule(new Rule(X, b, X)); // X -> b X
+		list.addRule(new Rule(X, b));
+		String string = "a b b b b b b b";
+		int memoized = new EarleyParser(list).parse(string, S).items.peek(8).size;
+		earleyParser.setGrammar(list);
+		Assert.assertEquals(memoized,
+			earleyParser.parse(string, S).items.peek(8).size);
+		
+		eventTypes = ParserEventType.ALL;
+		Assert.assertTrue(memoized
+			< earleyParser.parse(string, S).items.peek(8).size);
+	}
+	
+	public final void testChartListener() throws PepException {
+		earleyParser.setListener(this);
+		earleyParser.setChartListener(this);
+		Assert.assertSame(this, earleyParser.getChartListener());
+		parse = earleyParser.parse(tokens, seed);
+		Assert.assertTrue(items > 0);
+		Assert.assertEquals(edges, items);
+		
+		// without the listener, right recursion is still not memoized
+		Grammar list = new Grammar("list");
+		list.addRule(new Rule(S, a, X)); // S -> a X
+		list.addRule(new Rule(X, b, X)); // X -> b X
+		list.addRule(new Rule(X, b));
+		earleyParser.setGrammar(list);
+		edges = items = 0;
+		earleyParser.parse("a b b b b b b b", S);
+		earleyParser.setListener(null);
+		int all = items;
+		items = 0;
+		Assert.assertEquals(ACCEPT,
+			earleyParser.recognize("a b b b b b b b", S));
+		Assert.assertEquals(edges, all);
+		Assert.assertEquals(all, items);
+	}
+	
+	public final void testFlightEvents() throws Exception {
+		Path file = Files.createTempFile("pep", ".jfr");
+		try(Recording recording = new Recording()) {
+			recording.enable("org.xproc.pep.Parse");
+			recording.enable("org.xproc.pep.ParsePhase").withThreshold(Duration.ZERO);
+			recording.start();
+			parse = earleyParser.parse(tokens, seed);
+			Assert.assertEquals(REJECT, earleyParser.recognize("the boy", seed));
+			// rejected as soon as the first token is read
+			Assert.assertEquals(REJECT,
+				earleyParser.recognize("left the boy", seed));
+			recording.stop();
+			recording.dump(file);
+
+			List<RecordedEvent> parses = new ArrayList<RecordedEvent>();
+			Set<String> phases = new TreeSet<String>();
+			for(RecordedEvent event : RecordingFile.readAllEvents(file)) {
+				String name = event.getEventType().getName();
+				if(name.equals("org.xproc.pep.Parse")) {
+					parses.add(event);
+				}
+				else if(name.equals("org.xproc.pep.ParsePhase")) {
+					phases.add(event.getString("phase"));
+					Assert.assertTrue(event.getInt("index") <= tokens.size());
+				}
+			}
+			Assert.assertEquals(Arrays.asList("complete", "predict", "scan"),
+				new ArrayList<String>(phases));
+			
+			Assert.assertEquals(3, parses.size());
+			RecordedEvent parsed = null, recognized = null, rejected = null;
+			for(RecordedEvent event : parses) { // in the order they were written
+				if(event.getLong("items") >= 0L) {
+					parsed = event;
+				}
+				else if(event.getInt("tokens") == 2) {
+					recognized = event;
+				}
+				else {
+					rejected = event;
+				}
+			}
+			Assert.assertNotNull(parsed);
+			Assert.assertNotNull(recognized);
+			Assert.assertNotNull(rejected);
+			Assert.assertEquals(grammar.getName(), parsed.getString("grammar"));
+			Assert.assertEquals(seed.getName(), parsed.getString("seed"));
+			Assert.assertEquals(tokens.size(), parsed.getInt("tokens"));
+			Assert.assertEquals(parse.getStatistics().getItems(),
+				parsed.getLong("items"));
+			Assert.assertEquals(ACCEPT.name(), parsed.getString("status"));
+			Assert.assertEquals(2, recognized.getInt("tokens"));
+			Assert.assertEquals(-1L, recognized.getLong("items"));
+			Assert.assertEquals(REJECT.name(), recognized.getString("status"));
+			Assert.assertEquals(1, rejected.getInt("tokens"));
+			Assert.assertEquals(-1L, rejected.getLong("items"));
+			Assert.assertEquals(REJECT.name(), rejected.getString("status"));
+		}
+		finally {
+			Files.delete(file);
+		}
+	}
+	
+	public final void testNullableRules() throws PepException {
+		// S -> A X B, with A and B optional, and X -> a X | (empty)
+		Grammar optional = new Grammar("optional");
+		optional.addRule(new Rule(S, A, X, B));
+		optional.addRule(new Rule(A, a));
+		optional.addRule(new Rule(A));
+		optional.addRule(new Rule(B, b));
+		optional.addRule(new Rule(B));
+		optional.addRule(new Rule(X, a, X));
+		optional.addRule(new Rule(X));
+		
+		EarleyParser parser = new EarleyParser(optional);
+		for(String s : new String[] {"a", "b", "a b", "a a a", "a a b"}) {
+			Assert.assertEquals(s, ACCEPT, parser.recognize(s, S));
+		}
+		Assert.assertEquals(REJECT, parser.recognize("b a", S));
+		Assert.assertEquals(REJECT, parser.recognize("a b b", S));
+		
+		// "a a" is either A then X, or X twice
+		Parse p = parser.parse("a a", S);
+		Assert.assertEquals(2, p.countParseTrees().intValue());
+		Assert.assertEquals(2, p.getParseTrees().size());
+		for(ParseTree tree : p.getParseTrees()) {
+			Assert.assertEquals(3, tree.getChildren().length);
+		}
+		
+		// edges for empty derivations are built from their rules
+		Assert.assertFalse(p.getCompletedEdges(B, 2, 2).isEmpty());
+		Assert.assertEquals(1, p.getCompletedEdges(S, 0, 2).size());
+		
+		// nullable categories that derive themselves still terminate
+		optional.addRule(new Rule(B, B));
+		p = parser.parse("a", S);
+		Assert.assertEquals(ACCEPT, p.getStatus());
+		Assert.assertEquals(p.getParseTrees().size(),
+			p.countParseTrees().intValue());
+		for(Edge e : p.getChart().getEdges(1)) {
+			Assert.assertNotNull(e.toString());
+		}
+	}
+
+	public final void testPredictWithLookahead() throws PepException {
+		earleyParser.setOption(PREDICT_FOR_PRETERMINALS, true);
+		Parse all = earleyParser.parse(tokens, S);
+		
+		earleyParser.setOption(PREDICT_WITH_LOOKAHEAD, true);
+		Parse filtered = earleyParser.parse(tokens, S);
+		Assert.assertEquals(ACCEPT, filtered.getStatus());
+		Assert.assertEquals(all.getParseTrees(), filtered.getParseTrees());
+		Assert.assertTrue(filtered.getChart().countEdges()
+			< all.getChart().countEdges());
+		
+		// Det -> a is not predicted before "the"
+		Assert.assertFalse(filtered.getChart().contains(
+			new Edge(new DottedRule(new Rule(Det, a)), 0)));
+		Assert.assertTrue(all.getChart().contains(
+			new Edge(new DottedRule(new Rule(Det, a)), 0)));
+		
+		Assert.assertEquals(REJECT,
+			earleyParser.recognize("the boy boy", " ", S));
+		
+		// nullable rules are predicted whatever comes next
+		Grammar optional = new Grammar("optional");
+		optional.addRule(new Rule(S, A, X));
+		optional.addRule(new Rule(A, a));
+		optional.addRule(new Rule(A));
+		optional.addRule(new Rule(X, b));
+		earleyParser.setGrammar(optional);
+		Assert.assertEquals(ACCEPT, earleyParser.recognize("b", S));
+		Assert.assertEquals(ACCEPT, earleyParser.recognize("a b", S));
+		Assert.assertEquals(REJECT, earleyParser.recognize("a", S));
+	}
+
+	public final void testReparse() throws PepException {
+		// S -> L, L -> L A | A, A -> a | b | X L Y, with X and Y as brackets
+		Category x = new Category("x", true), y = new Category("y", true);
+		Grammar list = new Grammar("list");
+		list.addRule(new Rule(S, X));
+		list.addRule(new Rule(X, X, A));
+		list.addRule(new Rule(X, A));
+		list.addRule(new Rule(A, a));
+		list.addRule(new Rule(A, b));
+		list.addRule(new Rule(A, x, X, y));
+		earleyParser.setGrammar(list);
+		
+		List<String> before = Arrays.asList(
+			"a x b a y b a x a a y b b".split(" "));
+		Parse previous = earleyParser.parse(before, S);
+		Assert.assertEquals(ACCEPT, previous.getStatus());
+		
+		// change one token, the rest is taken from the previous parse
+		List<String> after = new ArrayList<String>(before);
+		after.set(5, "a");
+		Parse reparsed = earleyParser.reparse(previous, 5,
+			after.subList(5, after.size()));
+		Assert.assertEquals(after, reparsed.getTokens());
+		Assert.assertEquals(ACCEPT, reparsed.getStatus());
+		Assert.assertSame(previous.items.peek(3), reparsed.items.peek(3));
+		Assert.assertSame(previous.items.peek(10), reparsed.items.peek(10));
+		Parse expected = earleyParser.parse(after, S);
+		Assert.assertEquals(expected.getChart(), reparsed.getChart());
+		Assert.assertEquals(expected.getParseTrees(), reparsed.getParseTrees());
+		
+		// inside brackets, sets are reused once the brackets are closed
+		Parse prior = reparsed;
+		after.set(2, "a");
+		reparsed = earleyParser.reparse(prior, 2,
+			after.subList(2, after.size()));
+		Assert.assertFalse(prior.items.peek(3) == reparsed.items.peek(3));
+		Assert.assertSame(prior.items.peek(10), reparsed.items.peek(10));
+		Assert.assertEquals(earleyParser.parse(after, S).getChart(),
+			reparsed.getChart());
+		
+		// inserting and removing tokens moves the rest of the chart
+		after.addAll(7, Arrays.asList("x", "b", "y"));
+		reparsed = earleyParser.reparse(reparsed, 7,
+			after.subList(7, after.size()));
+		Assert.assertEquals(16, reparsed.getTokens().size());
+		Assert.assertEquals(earleyParser.parse(after, S).getChart(),
+			reparsed.getChart());
+		List<String> shorter = new ArrayList<String>(after);
+		shorter.subList(1, 4).clear();
+		reparsed = earleyParser.reparse(reparsed, 1,
+			shorter.subList(1, shorter.size()));
+		Assert.assertEquals(earleyParser.parse(shorter, S).getChart(),
+			reparsed.getChart());
+		Assert.assertEquals(earleyParser.parse(after.subList(0, 1), S)
+			.getStatus(), earleyParser.reparse(reparsed, 1,
+				Collections.<String>emptyList()).getStatus());
+		
+		// an unbalanced edit is rejected, as from scratch
+		reparsed = earleyParser.reparse(previous, 1, Arrays.asList("y", "a"));
+		Assert.assertEquals(REJECT, reparsed.getStatus());
+		
+		// nothing is reused if the options differ
+		earleyParser.setOption(IGNORE_TERMINAL_CASE, true);
+		reparsed = earleyParser.reparse(previous, 5,
+			before.subList(5, before.size()));
+		Assert.assertFalse(previous.items.peek(10) == reparsed.items.peek(10));
+		Assert.assertEquals(earleyParser.parse(before, S).getChart(),
+			reparsed.getChart());
+		
+		try {
+			earleyParser.reparse(previous, before.size() + 1,
+				Collections.<String>emptyList());
+			Assert.fail("reparsed after the end of the previous string");
+		}
+		catch(IllegalArgumentException expectedException) {
+			// expected
+		}
+	}
+
+	public final void testParseCharacters() throws Exception {
+		// S -> X, X -> X A | A, A -> letter | ' ' | emoji
+		Grammar chars = new Grammar("chars");
+		chars.addRule(new Rule(S, X));
+		chars.addRule(new Rule(X, X, A));
+		chars.addRule(new Rule(X, A));
+		chars.addRule(new Rule(A, CategoryCharacterSet.inclusion("letter",
+			CharacterSet.unicodeClass("L"))));
+		chars.addRule(new Rule(A, new Category(" ", true)));
+		chars.addRule(new Rule(A, CategoryCharacterSet.inclusion("emoji",
+			CharacterSet.range(0x1F600, 0x1F64F))));
+		earleyParser.setGrammar(chars);
+
+		String input = "ab c😀d";
+		List<String> tokens = Arrays.asList(
+			"a", "b", " ", "c", "😀", "d");
+		Parse expected = earleyParser.parse(tokens, S);
+		Assert.assertEquals(ACCEPT, expected.getStatus());
+
+		Parse parse = earleyParser.parseCharacters(input, S);
+		Assert.assertEquals(tokens, parse.getTokens());
+		Assert.assertEquals(expected.getChart(), parse.getChart());
+		Assert.assertEquals(expected.getParseTrees(), parse.getParseTrees());
+
+		// surrogate pairs are joined across reads, too
+		Reader reader = new BufferedReader(new StringReader(input), 4) {
+			@Override
+			public int read(char[] buffer) throws IOException {
+				return super.read(buffer, 0, 1);
+			}
+		};
+		Assert.assertEquals(expected.getChart(),
+			earleyParser.parseCharacters(reader, S).getChart());
+
+		Assert.assertEquals(REJECT,
+			earleyParser.parseCharacters("ab1", S).getStatus());
+		Assert.assertEquals(REJECT, earleyParser.parseCharacters("", S)
+			.getStatus());
+	}
+
+	public final void testSharedParser() throws Exception {
+		final EarleyParser shared = new EarleyParser(grammar.freeze());
+		final List<String> boy = Arrays.asList("the", "boy", "left"),
+			girl = Arrays.asList("THE", "GIRL", "LEFT");
+		final Parse expected = shared.parse(boy, S);
+		
+		// each parse reads the options once, whatever other threads do
+		Thread[] threads = new Thread[8];
+		final List<Throwable> failures
+			= Collections.synchronizedList(new ArrayList<Throwable>());
+		for(int t = 0; t < threads.length; t++) {
+			final boolean toggler = (t == 0);
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for(int i = 0; i < 200; i++) {
+							if(toggler) {
+								shared.setOption(IGNORE_TERMINAL_CASE, i % 2 == 0);
+							}
+							Assert.assertEquals(expected.getParseTrees(),
+								shared.parse(boy, S).getParseTrees());
+							Status status = shared.parse(girl, S).getStatus();
+							Assert.assertTrue(status == ACCEPT || status == REJECT);
+						}
+					}
+					catch(Throwable failure) {
+						failures.add(failure);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		
+		Assert.assertEquals(Collections.emptyList(), failures);
+	}
+
 	/**
-	 * Test method for {@link EarleyParser#predict(Chart, int)}.
+	 * Tests prediction, through an {@link IncrementalParse incremental parse}.
 	 */
-	public final void testPredict() {
-		Chart chart = new Chart();
-		chart.addEdge(0, new Edge(DottedRule.startRule(seed), 0));
-		
-		earleyParser.predict(chart, 0);
+	public final void testPredict() throws PepException {
+		Chart chart = firstToken().getChart();
 		
 		Set<Edge> zeroEdges = chart.getEdges(0); 
 		Assert.assertTrue("rule S -> NP VP not predicted",
@@ -212,15 +699,11 @@ public class EarleyParserTest extends PepFixture
 	}
 	
 	/**
-	 * Test method for {@link EarleyParser#scan(Chart, int, String)}.
+	 * Tests scanning, through an {@link IncrementalParse incremental parse}.
 	 */
 	public final void testScan() throws PepException {
-		Chart chart = new Chart();
-		chart.addEdge(0, new Edge(DottedRule.startRule(seed), 0));
-		
-		earleyParser.predict(chart, 0);
+		Chart chart = firstToken().getChart();
 		String zeroToken = tokens.get(0);
-		earleyParser.scan(chart, 0, zeroToken);
 		Set<Edge> zeroEdges = chart.getEdges(1);
 		Edge scanEdge = new Edge(new DottedRule(new Rule(Det, the), 0), 0);
 		scanEdge = Edge.scan(scanEdge, zeroToken, true);
@@ -230,15 +713,10 @@ public class EarleyParserTest extends PepFixture
 	}
 	
 	/**
-	 * Test method for {@link EarleyParser#complete(Chart, int)}.
+	 * Tests completion, through an {@link IncrementalParse incremental parse}.
 	 */
 	public final void testComplete() throws PepException {
-		Chart chart = new Chart();
-		chart.addEdge(0, new Edge(DottedRule.startRule(seed), 0));
-		
-		earleyParser.predict(chart, 0);
-		earleyParser.scan(chart, 0, tokens.get(0));
-		earleyParser.complete(chart, 1);
+		Chart chart = firstToken().getChart();
 		
 		Edge expected = new Edge(new DottedRule(new Rule(NP, Det, N), 1), 0);
 		for(Edge e : chart.getEdges(1)) {
@@ -251,11 +729,28 @@ public class EarleyParserTest extends PepFixture
 		Assert.fail("rule NP -> Det * N not completed");
 	}
 	
+	/**
+	 * Offers only the first token to a new incremental parse, and finishes it.
+	 */
+	private Parse firstToken() throws PepException {
+		IncrementalParse session = earleyParser.startParse(seed);
+		Assert.assertTrue(session.offer(tokens.get(0)));
+		return session.finish();
+	}
+	
+	public Set<ParserEventType> getEventTypes() {
+		return eventTypes;
+	}
+	
 	@SuppressWarnings("unused")
-	public void edgeCompleted(EdgeEvent edgeEvent) {}
+	public void edgeCompleted(EdgeEvent edgeEvent) {
+		edges++;
+	}
 
 	@SuppressWarnings("unused")
-	public void edgePredicted(EdgeEvent edgeEvent) {}
+	public void edgePredicted(EdgeEvent edgeEvent) {
+		edges++;
+	}
 
 	public void parseComplete(ParseEvent parseEvent) {
 		parse = parseEvent.parse;
@@ -271,14 +766,36 @@ public class EarleyParserTest extends PepFixture
 		throws PepException {}
 
 	@SuppressWarnings("unused")
-	public void parserSeeded(EdgeEvent edgeEvent) {}
+	public void parserSeeded(EdgeEvent edgeEvent) {
+		edges++;
+	}
 
 	@SuppressWarnings("unused")
-	public void edgeScanned(EdgeEvent tokenEvent) {}
+	public void edgeScanned(EdgeEvent tokenEvent) {
+		edges++;
+	}
 
 	@SuppressWarnings("unused")
 	public void optionSet(ParserOptionEvent optionEvent) {}
 
 	@SuppressWarnings("unused")
 	public void tokenConsumed(String token) {}
+	
+	public void itemPredicted(int index, int rule, int dot, int origin) {
+		Assert.assertEquals(0, dot);
+		Assert.assertEquals(index, origin);
+		items++;
+	}
+	
+	public void itemScanned(int index, int rule, int dot, int origin) {
+		Rule r = earleyParser.getGrammar().compile().getRule(rule);
+		Assert.assertTrue(r.right[dot - 1].isTerminal());
+		items++;
+	}
+	
+	public void itemCompleted(int index, int rule, int dot, int origin) {
+		Rule r = earleyParser.getGrammar().compile().getRule(rule);
+		Assert.assertFalse(r.right[dot - 1].isTerminal());
+		items++;
+	}
 }
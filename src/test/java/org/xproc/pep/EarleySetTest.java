@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+
+public class EarleySetTest extends PepFixture {
+
+	EarleySet set;
+	int[] next; // category after the dot of each dotted rule identifier
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		next = new int[64];
+		Arrays.fill(next, -1);
+		set = new EarleySet(next);
+	}
+
+	public final void testKey() {
+		Assert.assertEquals(0x0000000500000007L, EarleySet.key(5, 7));
+		Assert.assertFalse(EarleySet.key(0, 0) == EarleySet.EMPTY);
+		Assert.assertFalse(EarleySet.key(7, 5) == EarleySet.key(5, 7));
+	}
+
+	public final void testAdd() {
+		Assert.assertEquals(0, set.add(3, 0));
+		Assert.assertEquals(1, set.add(3, 1));
+		Assert.assertEquals(2, set.size);
+		Assert.assertEquals(0, set.find(3, 0));
+		Assert.assertEquals(1, set.find(3, 1));
+		Assert.assertEquals(-1, set.find(4, 0));
+		Assert.assertEquals(-1, set.derivation[0]);
+	}
+
+	public final void testAddDerivation() {
+		int item = set.add(3, 0);
+		Assert.assertEquals(0, set.countDerivations(item));
+		Assert.assertTrue(set.addDerivation(item, 2));
+		Assert.assertFalse(set.addDerivation(item, 2));
+		Assert.assertTrue(set.addDerivation(item, 1));
+		Assert.assertEquals(2, set.countDerivations(item));
+
+		// kept in the order recorded
+		int d = set.derivation[item];
+		Assert.assertEquals(2, set.pivot[d]);
+		Assert.assertEquals(1, set.pivot[set.link[d]]);
+		Assert.assertEquals(-1, set.link[set.link[d]]);
+	}
+
+	public final void testGrow() {
+		for(int i = 0; i < 1000; i++) {
+			Assert.assertEquals(i, set.add(i % 37, i));
+			Assert.assertTrue(set.addDerivation(i, i));
+		}
+
+		Assert.assertEquals(1000, set.size);
+		for(int i = 0; i < 1000; i++) {
+			Assert.assertEquals(i, set.find(i % 37, i));
+			Assert.assertEquals(i, set.origin[i]);
+			Assert.assertEquals(1, set.countDerivations(i));
+		}
+	}
+
+	public final void testWaiting() {
+		next[3] = 7;
+		next[4] = 8;
+		next[5] = 7;
+		Assert.assertEquals(-1, set.firstWaiting(7));
+
+		Assert.assertEquals(0, set.add(3, 0));
+		Assert.assertEquals(1, set.add(4, 0));
+		Assert.assertEquals(2, set.add(6, 0)); // passive
+		Assert.assertEquals(3, set.add(5, 1));
+		Assert.assertEquals(4, set.add(3, 2));
+
+		// in the order they were added
+		Assert.assertEquals(0, set.firstWaiting(7));
+		Assert.assertEquals(3, set.nextWaiting[0]);
+		Assert.assertEquals(4, set.nextWaiting[3]);
+		Assert.assertEquals(-1, set.nextWaiting[4]);
+		Assert.assertEquals(1, set.firstWaiting(8));
+		Assert.assertEquals(-1, set.nextWaiting[1]);
+		Assert.assertEquals(-1, set.firstWaiting(6));
+
+		// many categories
+		int[] many = new int[1000];
+		for(int i = 0; i < many.length; i++) {
+			many[i] = i;
+		}
+		EarleySet large = new EarleySet(many);
+		for(int i = 0; i < many.length; i++) {
+			large.add(i, 0);
+		}
+		for(int i = 0; i < many.length; i++) {
+			Assert.assertEquals(i, large.firstWaiting(i));
+			Assert.assertEquals(-1, large.nextWaiting[i]);
+		}
+	}
+}
@@ -98,7 +98,31 @@ public class EdgeTest extends PepFixture {
 		bases.add(ce1Completer);
 		Assert.assertEquals(bases, ce2.getBases());
 	}
-	
+
+	/**
+	 * Test method for {@link Edge#addBasisEdge(Edge, Edge)}.
+	 */
+	public final void testAddBasisEdge() {
+		Edge completer = new Edge(
+				new DottedRule(new Rule(Y, A), 1), edge2.origin);
+		Edge ce = Edge.complete(edge2, completer);
+
+		Set<Edge> bases = Edge.addBasisEdge(ce, completer);
+		Assert.assertSame("existing basis added again", ce.bases, bases);
+
+		bases = Edge.addBasisEdge(ce, edge1);
+		Assert.assertEquals(ce.bases.size() + 1, bases.size());
+		Assert.assertTrue(bases.containsAll(ce.bases));
+		Assert.assertEquals(new LinkedHashSet<Edge>(bases).hashCode(),
+				bases.hashCode());
+
+		Edge last = null;
+		for(Edge e : bases) {
+			last = e;
+		}
+		Assert.assertSame(edge1, last);
+	}
+
 	/**
 	 * Test method for {@link Edge#hashCode()}.
 	 */
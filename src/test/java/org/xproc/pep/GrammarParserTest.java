@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.xml.sax.SAXParseException;
+
+public class GrammarParserTest extends PepFixture {
+
+	GrammarParser validating, lenient;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		validating = new GrammarParser();
+		lenient = new GrammarParser(false);
+	}
+
+	public final void testParse() throws IOException, PepException {
+		Assert.assertTrue(validating.isValidating());
+		Assert.assertFalse(lenient.isValidating());
+
+		Grammar tiny = validating.parse(new File("samples/tiny.xml"));
+		Assert.assertEquals("tiny", tiny.getName());
+		Assert.assertEquals(lenient.parse(new File("samples/tiny.xml"))
+			.getAllRules(), tiny.getAllRules());
+		Assert.assertEquals(Status.ACCEPT, new EarleyParser(tiny).recognize(
+			"Mary saw her duck", new Category("S")));
+
+		Grammar g = validating.parse(stream("<grammar name='g'>"
+			+ "<!-- rules --><rule category='S'><category name='NP'/>"
+			+ "<category name='left' terminal='true'/></rule>"
+			+ "<rule category='NP'><category name='the' terminal='false'/>"
+			+ "</rule><rule category='E'/></grammar>"), null);
+		Assert.assertEquals("g", g.getName());
+		Assert.assertEquals(3, g.getAllRules().size());
+		Assert.assertTrue(g.getRules(S).contains(new Rule(S, NP, left)));
+		Assert.assertTrue(g.getRules(NP).contains(
+			new Rule(NP, new Category("the", false))));
+		Assert.assertTrue(g.getRules(E).contains(new Rule(E)));
+	}
+
+	public final void testSchema() throws PepException {
+		Assert.assertNotNull(GrammarParser.getSchema());
+		Assert.assertSame(GrammarParser.getSchema(), GrammarParser.getSchema());
+	}
+
+	public final void testInvalid() throws PepException {
+		String invalid = "<grammar name='g'>\n"
+			+ "<rule category='S'><category name='a'/></rule>\n"
+			+ "<category name='b'/></grammar>"; // not in a rule
+		Assert.assertEquals(1, lenient.parse(stream(invalid), null)
+			.getAllRules().size());
+
+		try {
+			validating.parse(stream(invalid), null);
+			Assert.fail("loaded an invalid grammar");
+		}
+		catch(PepException expected) {
+			Assert.assertTrue(expected.getCause() instanceof SAXParseException);
+			Assert.assertEquals(3,
+				((SAXParseException)expected.getCause()).getLineNumber());
+		}
+	}
+
+	public final void testNotWellFormed() {
+		for(GrammarParser parser : new GrammarParser[] {validating, lenient}) {
+			try {
+				parser.parse(stream("<grammar name='g'><rule category='S'>"
+					+ "</grammar>"), null);
+				Assert.fail("loaded a grammar that is not well-formed");
+			}
+			catch(PepException expected) {
+				// expected
+			}
+		}
+	}
+
+	private static InputStream stream(String xml) {
+		return new ByteArrayInputStream(xml.getBytes());
+	}
+}
@@ -47,6 +47,35 @@ public class GrammarTest extends PepFixture {
 		catch(NullPointerException expected) {}
 	}
 	
+	/**
+	 * Test method for {@link Grammar#freeze()}.
+	 */
+	public final void testFreeze() {
+		Grammar frozen = g.freeze();
+		Assert.assertTrue(frozen.isFrozen());
+		Assert.assertFalse(g.isFrozen());
+		Assert.assertSame(frozen, frozen.freeze());
+		Assert.assertEquals(g.getAllRules(), frozen.getAllRules());
+		Assert.assertSame(frozen.compile(), frozen.compile());
+		
+		try {
+			frozen.addRule(new Rule(Z, X, Y));
+			Assert.fail("able to add a rule to a frozen grammar");
+		}
+		catch(UnsupportedOperationException expected) {}
+		
+		try {
+			frozen.getRules(rule1.left).add(new Rule(rule1.left, Z));
+			Assert.fail("able to change the rules of a frozen grammar");
+		}
+		catch(UnsupportedOperationException expected) {}
+		
+		// the original can still change, without affecting the copy
+		Rule r = new Rule(Z, X, Y);
+		g.addRule(r);
+		Assert.assertFalse(frozen.getAllRules().contains(r));
+	}
+	
 	public final void testContainsRules() {
 		Assert.assertTrue(g.containsRules(rule1.left));
 		Assert.assertTrue(g.getRules(rule2.left).contains(rule2));
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import static org.xproc.pep.Status.ACCEPT;
+import static org.xproc.pep.Status.REJECT;
+
+import org.junit.Assert;
+
+public class IncrementalParseTest extends PepFixture {
+
+	EarleyParser earleyParser;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		earleyParser = new EarleyParser(grammar);
+	}
+
+	public final void testOffer() throws PepException {
+		IncrementalParse session = earleyParser.startParse(S);
+		Assert.assertEquals(S, session.getSeed());
+		Assert.assertFalse(session.isAccepting());
+
+		Assert.assertTrue(session.offer("the"));
+		Assert.assertTrue(session.offer("boy"));
+		Assert.assertFalse(session.isAccepting());
+		Assert.assertTrue(session.offer("left"));
+		Assert.assertTrue(session.isAccepting());
+		Assert.assertEquals(3, session.getIndex());
+
+		// no string of the grammar continues this one
+		Assert.assertFalse(session.offer("left"));
+		Assert.assertFalse(session.isViable());
+		Assert.assertFalse(session.isAccepting());
+		Assert.assertEquals(REJECT, session.finish().getStatus());
+	}
+
+	public final void testNotViable() throws PepException {
+		IncrementalParse session = earleyParser.startParse(S);
+		Assert.assertFalse(session.offer("boy"));
+		Assert.assertFalse(session.offer("the"));
+		Assert.assertFalse(session.isAccepting());
+	}
+
+	public final void testFinish() throws PepException {
+		IncrementalParse session = earleyParser.startParse(S);
+		for(String token : tokens) {
+			session.offer(token);
+		}
+
+		Parse parse = session.finish();
+		Assert.assertTrue(session.isFinished());
+		Assert.assertSame(parse, session.finish());
+		Assert.assertEquals(ACCEPT, parse.getStatus());
+		Assert.assertEquals(tokens, parse.getTokens());
+
+		Parse batch = earleyParser.parse(tokens, S);
+		Assert.assertEquals(batch.getParseTrees(), parse.getParseTrees());
+
+		try {
+			session.offer("left");
+			Assert.fail("offered a token to a finished parse");
+		}
+		catch(IllegalStateException expected) {
+			// expected
+		}
+	}
+
+	public final void testOptionsFixed() throws PepException {
+		earleyParser.setOption(ParserOption.IGNORE_TERMINAL_CASE, true);
+		IncrementalParse session = earleyParser.startParse(S);
+		earleyParser.setOption(ParserOption.IGNORE_TERMINAL_CASE, false);
+
+		Assert.assertTrue(session.offer("The"));
+		Assert.assertTrue(session.offer("BOY"));
+		Assert.assertTrue(session.offer("left"));
+		Assert.assertEquals(ACCEPT, session.finish().getStatus());
+	}
+
+	public final void testLookahead() throws PepException {
+		earleyParser.setOption(ParserOption.PREDICT_WITH_LOOKAHEAD, true);
+		IncrementalParse session = earleyParser.startParse(S);
+		Assert.assertTrue(session.offer("the"));
+		Assert.assertTrue(session.offer("girl"));
+		// asking before the next token must not lose any predictions
+		Assert.assertFalse(session.isAccepting());
+		Assert.assertTrue(session.offer("left"));
+		Assert.assertEquals(ACCEPT, session.finish().getStatus());
+	}
+
+	public final void testRecognizing() throws PepException {
+		// S -> X, X -> X A | A, A -> a | b
+		Grammar list = new Grammar("list");
+		list.addRule(new Rule(S, X));
+		list.addRule(new Rule(X, X, A));
+		list.addRule(new Rule(X, A));
+		list.addRule(new Rule(A, a));
+		list.addRule(new Rule(A, b));
+		earleyParser.setGrammar(list);
+
+		IncrementalParse session = new IncrementalParse(earleyParser, S, true);
+		for(int i = 0; i < 1000; i++) {
+			Assert.assertTrue(session.offer((i % 3 == 0) ? "a" : "b"));
+		}
+		Assert.assertTrue(session.isAccepting());
+
+		// only the sets where items that can still be advanced began are kept
+		Assert.assertNotNull(session.items.peek(0));
+		Assert.assertNull(session.items.peek(500));
+		Assert.assertTrue(session.items.keptCount < 5);
+		Assert.assertEquals(0, session.items.peek(1000).pooled);
+		Assert.assertTrue(session.finish().getTokens().isEmpty());
+	}
+
+	public final void testNullSeed() {
+		try {
+			earleyParser.startParse(null);
+			Assert.fail("started a parse without a seed");
+		}
+		catch(PepException expected) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2026 Norman Walsh
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation; either version 2.1 of the License, or (at your
+ * option) any later version. The GNU Lesser General Public License is
+ * distributed with this software in the file COPYING.
+ */
+package org.xproc.pep;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+
+public class ParseForestTest extends PepFixture {
+
+	Category VT = new Category("VT"), VS = new Category("VS"),
+		VI = new Category("VI"), saw = new Category("saw", true),
+		duck = new Category("duck", true), her = new Category("her", true),
+		he = new Category("he", true);
+
+	Parse parse;
+	ParseForest forest;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+
+		Grammar g = new Grammar("duck");
+		g.addRule(new Rule(S, NP, VP));
+		g.addRule(new Rule(NP, he));
+		g.addRule(new Rule(NP, her));
+		g.addRule(new Rule(NP, Det, N));
+		g.addRule(new Rule(VT, saw));
+		g.addRule(new Rule(VS, saw));
+		g.addRule(new Rule(VI, duck));
+		g.addRule(new Rule(N, duck));
+		g.addRule(new Rule(Det, her));
+		g.addRule(new Rule(VP, VT, NP));
+		g.addRule(new Rule(VP, VS, S));
+		g.addRule(new Rule(VP, VI));
+
+		parse = new EarleyParser(g).parse("he saw her duck", S);
+		forest = parse.getForest();
+	}
+
+	public final void testRoot() {
+		ForestNode root = forest.getRoot();
+		Assert.assertEquals(S, root.getCategory());
+		Assert.assertTrue(root.isSymbol());
+		Assert.assertFalse(root.isAmbiguous());
+		Assert.assertEquals(0, root.getOrigin());
+		Assert.assertEquals(4, root.getIndex());
+		Assert.assertSame(forest, parse.getForest());
+	}
+
+	public final void testPackedNodes() {
+		ForestNode vp = forest.getNode(VP, 1, 4);
+		Assert.assertTrue(vp.isAmbiguous());
+
+		List<PackedNode> packed = vp.getPackedNodes();
+		Assert.assertEquals(2, packed.size());
+		for(PackedNode p : packed) {
+			Assert.assertEquals(VP, p.getRule().getLeft());
+			Assert.assertEquals(2, p.getPivot());
+			Assert.assertEquals(1, p.getLeft().getOrigin());
+			Assert.assertEquals(2, p.getLeft().getIndex());
+			Assert.assertEquals(2, p.getRight().getOrigin());
+			Assert.assertEquals(4, p.getRight().getIndex());
+		}
+
+		PackedNode s = forest.getRoot().getPackedNodes().get(0);
+		Assert.assertEquals(new DottedRule(new Rule(S, NP, VP), 2),
+			s.getDottedRule());
+		Assert.assertEquals(forest.getNode(VP, 1, 4), s.getRight());
+		ForestNode left = s.getLeft();
+		Assert.assertFalse(left.isSymbol());
+		Assert.assertEquals(new DottedRule(new Rule(S, NP, VP), 1),
+			left.getDottedRule());
+		Assert.assertNull(left.getPackedNodes().get(0).getLeft());
+		Assert.assertEquals(forest.getNode(NP, 0, 1),
+			left.getPackedNodes().get(0).getRight());
+
+		ForestNode token = forest.getNode(duck, 3, 4);
+		Assert.assertTrue(token.isTerminal());
+		Assert.assertTrue(token.getPackedNodes().isEmpty());
+	}
+
+	public final void testGetNode() {
+		Assert.assertNull(forest.getNode(NP, 0, 4));
+		Assert.assertNull(forest.getNode(Z, 0, 1));
+		Assert.assertNull(forest.getNode(saw, 0, 1));
+		Assert.assertEquals(forest.getNode(NP, 2, 4),
+			forest.getNode(NP, 2, 4));
+
+		try {
+			forest.getNode(null, 0, 1);
+			Assert.fail("able to get node for null category");
+		}
+		catch(NullPointerException expected) {}
+	}
+
+	public final void testReject() throws PepException {
+		Parse p = new EarleyParser(grammar).parse("the boy", S);
+		Assert.assertEquals(Status.REJECT, p.getStatus());
+		Assert.assertNull(p.getForest().getRoot());
+		Assert.assertNotNull(p.getForest().getNode(NP, 0, 2));
+	}
+
+	public final void testAmbiguity() throws PepException {
+		Grammar g = new Grammar("ambiguous");
+		g.addRule(new Rule(S, S, S));
+		g.addRule(new Rule(S, a));
+
+		List<String> t = new ArrayList<String>();
+		for(int i = 0; i < 40; i++) {
+			t.add(a.name);
+		}
+
+		// items grow polynomially, though the trees do not
+		Parse p = new EarleyParser(g).parse(t, S);
+		Assert.assertEquals(Status.ACCEPT, p.getStatus());
+		Assert.assertTrue(p.getChart().countEdges() < 5 * t.size() * t.size());
+		Assert.assertEquals(39, p.getForest().getRoot().getPackedNodes().size());
+
+		p = new EarleyParser(g).parse("a a a a a", S);
+		Assert.assertEquals(14, p.getParseTrees().size());
+	}
+
+	public final void testCycle() throws PepException {
+		Grammar g = new Grammar("cyclic");
+		g.addRule(new Rule(A, B));
+		g.addRule(new Rule(B, A));
+		g.addRule(new Rule(A, a));
+
+		Parse p = new EarleyParser(g).parse("a", A);
+		Assert.assertEquals(Status.ACCEPT, p.getStatus());
+		Assert.assertTrue(p.getForest().getRoot().isAmbiguous());
+		Assert.assertEquals(1, p.getParseTrees().size());
+	}
+
+	public final void testCycleWithEmptyRules() throws PepException {
+		Category N0 = new Category("N0"), N1 = new Category("N1"),
+			N2 = new Category("N2"), c = new Category("c", true);
+		Grammar g = new Grammar("cyclic empty");
+		g.addRule(new Rule(N1));
+		g.addRule(new Rule(N2));
+		g.addRule(new Rule(N0, N1, N2, N1));
+		g.addRule(new Rule(N0, a, N0));
+		g.addRule(new Rule(N0, b));
+		g.addRule(new Rule(N0, N1, N0));
+		g.addRule(new Rule(N0, N0));
+		g.addRule(new Rule(N0, N2, N1));
+		g.addRule(new Rule(N1, N1, N0, N0));
+		g.addRule(new Rule(N1, c));
+		g.addRule(new Rule(N1, a));
+		g.addRule(new Rule(N2, N0));
+
+		EarleyParser parser = new EarleyParser(g);
+		for(String s : new String[] {"b", "c b", "b b", "a b"}) {
+			Parse p = parser.parse(s, N0);
+			Assert.assertEquals(s, Status.ACCEPT, p.getStatus());
+
+			long iterated = 0L;
+			for(Iterator<ParseTree> i = p.parseTreeIterator(); i.hasNext();) {
+				i.next();
+				iterated++;
+			}
+			Assert.assertTrue(s, iterated > 0L);
+			Assert.assertEquals(s, BigInteger.valueOf(iterated),
+				p.countParseTrees());
+		}
+	}
+
+	public final void testLazyTrees() throws PepException {
+		Grammar g = new Grammar("ambiguous");
+		g.addRule(new Rule(S, S, S));
+		g.addRule(new Rule(S, a));
+
+		List<String> t = new ArrayList<String>();
+		for(int i = 0; i < 40; i++) {
+			t.add(a.name);
+		}
+
+		Parse p = new EarleyParser(g).parse(t, S);
+		// Catalan number C(39)
+		Assert.assertEquals(new BigInteger("680425371729975800390"),
+			p.countParseTrees());
+		Assert.assertTrue(p.toString().endsWith("(680425371729975800390)"));
+
+		Assert.assertEquals(3, p.getParseTrees(3).size());
+		Assert.assertEquals(5, p.parseTrees().limit(5).count());
+		ParseTree first = p.getParseTree();
+		Assert.assertEquals(first, p.parseTreeIterator().next());
+		Assert.assertNull(first.getParent());
+		Assert.assertSame(first, first.getChildren()[0].getParent());
+
+		Iterator<ParseTree> i = p.parseTreeIterator();
+		Set<ParseTree> seen = new HashSet<ParseTree>();
+		for(int n = 0; n < 100; n++) {
+			Assert.assertTrue(seen.add(i.next()));
+		}
+
+		try {
+			p.getParseTrees(-1);
+			Assert.fail("able to get negative number of trees");
+		}
+		catch(IllegalArgumentException expected) {}
+	}
+
+	public final void testIteratorMatchesSet() throws PepException {
+		Set<ParseTree> trees = new HashSet<ParseTree>();
+		Iterator<ParseTree> i = parse.parseTreeIterator();
+		while(i.hasNext()) {
+			trees.add(i.next());
+		}
+
+		Assert.assertEquals(parse.getParseTrees(), trees);
+		Assert.assertEquals(BigInteger.valueOf(2), parse.countParseTrees());
+		Assert.assertEquals(BigInteger.valueOf(2),
+			forest.countParseTrees(forest.getNode(VP, 1, 4)));
+		Assert.assertEquals(1, forest.parseTrees(forest.getNode(NP, 2, 4))
+			.count());
+
+		try {
+			forest.parseTreeIterator(forest.getRoot().getPackedNodes().get(0)
+				.getLeft());
+			Assert.fail("able to iterate trees of intermediate node");
+		}
+		catch(IllegalArgumentException expected) {}
+	}
+}
@@ -11,6 +11,8 @@
  */
 package org.xproc.pep;
 
+import java.math.BigInteger;
+
 import org.junit.Assert;
 
 
@@ -74,6 +76,38 @@ public class ParseTest extends PepFixture {
 		Assert.assertEquals(chart, parse.getChart());
 	}
 
+	/**
+	 * Test method for {@link Parse#getStatistics()}.
+	 */
+	public final void testGetStatistics() throws PepException {
+		Assert.assertNull(parse.getStatistics()); // not made by a parser
+		
+		EarleyParser parser = new EarleyParser(grammar);
+		Parse p = parser.parse("the boy left", seed);
+		ParseStatistics stats = p.getStatistics();
+		Assert.assertEquals(4, stats.getPositions());
+		Assert.assertEquals(p.getChart().countEdges(), stats.getItems());
+		Assert.assertEquals(0, stats.getScanned(0));
+		for(int i = 1; i < 4; i++) {
+			Assert.assertEquals(1, stats.getScanned(i)); // one terminal each
+		}
+		Assert.assertEquals(1, stats.getCompleted(1)); // NP -> Det * N
+		Assert.assertEquals(stats.getItems(stats.getPeakPosition()),
+			stats.getPeakSetSize());
+		Assert.assertTrue(stats.getElapsedNanos() > 0L);
+		Assert.assertEquals(-1L,
+			stats.getWallNanos(ParseStatistics.Phase.SCAN)); // not timed
+		
+		parser.setOption(ParserOption.TIME_PHASES, true);
+		stats = parser.parse("the boy left", seed).getStatistics();
+		Assert.assertEquals(p.getChart().countEdges(), stats.getItems());
+		for(ParseStatistics.Phase phase : ParseStatistics.Phase.values()) {
+			Assert.assertTrue(stats.getWallNanos(phase) >= 0L);
+			Assert.assertTrue(stats.getWallNanos(phase)
+				<= stats.getElapsedNanos());
+		}
+	}
+
 	/**
 	 * Test method for {@link Parse#getStatus()}.
 	 */
@@ -90,4 +124,17 @@ public class ParseTest extends PepFixture {
 		Assert.assertEquals(p, parse);
 	}
 
+	/**
+	 * Test method for {@link Parse#getParseTree()}.
+	 */
+	public final void testGetParseTree() {
+		ParseTree tree = parse.getParseTree();
+		Assert.assertEquals(seed, tree.getNode());
+		Assert.assertEquals(parse.getParseTrees(), parse.getParseTrees(5));
+		Assert.assertEquals(0, parse.getParseTrees(0).size());
+		Assert.assertEquals(1, parse.parseTrees().count());
+		Assert.assertEquals(BigInteger.ONE, parse.countParseTrees());
+		Assert.assertNull(parse.getForest());
+	}
+
 }
@@ -34,10 +34,11 @@ public class RuleTest extends PepFixture {
 		catch(IllegalArgumentException expected) {}
 		
 		try {
-			new Rule(Z, new Category[] {});
-			fail("able to create rule with empty right");
+			Assert.assertTrue(new Rule(Z, new Category[] {}).isEmpty());
+		}
+		catch(IllegalArgumentException problem) {
+			fail("unable to create rule with empty right");
 		}
-		catch(IllegalArgumentException expected) {}
 		
 		try {
 			new Rule(Z, a, A);